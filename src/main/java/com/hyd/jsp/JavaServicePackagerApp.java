@@ -1,5 +1,6 @@
 package com.hyd.jsp;
 
+import com.hyd.jsp.archive.DeltaApplier;
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import io.swagger.v3.oas.annotations.info.Info;
 import io.swagger.v3.oas.annotations.servers.Server;
@@ -8,6 +9,8 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
+import java.util.Arrays;
+
 @SpringBootApplication
 @OpenAPIDefinition(
   info = @Info(title = "Java 项目构建服务"),
@@ -16,7 +19,8 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
     @Server(url = "http://localhost:8081", description = "测试环境")
   },
   tags = {
-    @Tag(name = "构建配置接口", description = "用于存取构建配置的接口")
+    @Tag(name = "构建配置接口", description = "用于存取构建配置的接口"),
+    @Tag(name = "构建任务接口", description = "用于发起和查询构建任务的接口")
   }
 )
 @EnableConfigurationProperties({
@@ -24,7 +28,11 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 })
 public class JavaServicePackagerApp {
 
-  public static void main(String[] args) {
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0 && DeltaApplier.COMMAND.equals(args[0])) {
+      DeltaApplier.main(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
     SpringApplication.run(JavaServicePackagerApp.class, args);
   }
 }
@@ -1,11 +1,162 @@
 package com.hyd.jsp;
 
+import com.hyd.jsp.settings.SettingsFormat;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
 
 @Data
 @ConfigurationProperties(prefix = "jsp")
 public class JavaServicePackagerConfig {
 
   private String settingsFilePath = "java-service-packager.settings.json";
+
+  /**
+   * 配置文件的格式，读取时会自动识别，格式不同时转换为此格式
+   */
+  private SettingsFormat settingsFormat = SettingsFormat.JSON;
+
+  /**
+   * 配置的保存方式：file 每次重写整个配置文件；journal 只追加修改过的项目配置，定期合并到配置文件
+   */
+  private String settingsStorage = "file";
+
+  /**
+   * journal 方式下，日志记录数超过此值后合并到配置文件
+   */
+  private int settingsJournalCompactThreshold = 1000;
+
+  /**
+   * 配置修改后延迟写入文件的时间，这段时间内的多次修改只写入一次
+   */
+  private Duration settingsWriteDelay = Duration.ofMillis(500);
+
+  /**
+   * 写入配置文件后是否强制刷到磁盘
+   */
+  private boolean settingsFsync = false;
+
+  /**
+   * 工作目录，用于存放构建日志和构建产物
+   */
+  private String workDir = "java-service-packager.work";
+
+  /**
+   * 同时执行构建任务的线程数，同一项目的任务总是依次执行
+   */
+  private int buildWorkers = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * 内存中保留的已结束任务数量
+   */
+  private int jobHistorySize = 1000;
+
+  /**
+   * 是否启用构建缓存，源码和构建配置都没有变化时直接使用上次的构建产物
+   */
+  private boolean buildCacheEnabled = true;
+
+  /**
+   * 构建缓存的文件总大小上限，超过后删除最久没有使用的缓存
+   */
+  private DataSize buildCacheMaxSize = DataSize.ofGigabytes(10);
+
+  /**
+   * 文件摘要缓存保留的文件数，超过时淘汰最久未使用的文件
+   */
+  private int fileHashCacheSize = 200_000;
+
+  /**
+   * mvnd 可执行文件，用于 DAEMON 方式的构建，可以是文件路径或 PATH 中的命令名
+   */
+  private String mvndExecutable = "mvnd";
+
+  /**
+   * mvnd 守护进程空闲多少分钟后退出
+   */
+  private int mvndIdleTimeoutMinutes = 30;
+
+  /**
+   * 最多为多少个项目保留 mvnd 守护进程，超过时停止最久未使用的项目的守护进程
+   */
+  private int mvndMaxDaemons = 4;
+
+  /**
+   * 是否所有构建共用工作目录下的 Maven 本地仓库，按构件加文件锁，多个任务可以同时下载依赖
+   */
+  private boolean mavenRepositoryShared = true;
+
+  /**
+   * 是否预先下载依赖：构建成功后单独执行一次 dependency:tree 记录解析到的依赖，
+   * 下次构建时与构建同时下载本地仓库中缺少的部分。需要共用 Maven 本地仓库
+   */
+  private boolean mavenDependencyPrewarm = false;
+
+  /**
+   * 离线模式：不为空时所有远程仓库都指向此目录（按 Maven 仓库结构存放构件），构建不访问网络
+   */
+  private String mavenMirrorDirectory;
+
+  /**
+   * 所有任务共用的打包压缩线程数
+   */
+  private int archiveThreads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * 生成 AppCDS 归档等使用的 JDK，为空时使用运行本程序的 JDK
+   */
+  private String jdkHome;
+
+  /**
+   * 保留的精简运行时个数，超过时删除最久没有使用的
+   */
+  private int jlinkRuntimeCacheSize = 10;
+
+  /**
+   * 保留的 jar 文件模块分析结果个数，超过时删除最久没有使用的
+   */
+  private int jlinkDepsCacheSize = 20000;
+
+  /**
+   * 每个执行中的任务保留在内存中的最近日志大小（字节），供实时查看日志
+   */
+  private int logBufferSize = 256 * 1024;
+
+  /**
+   * 日志缓冲区是否使用堆外内存
+   */
+  private boolean logBufferOffHeap = false;
+
+  /**
+   * 发送实时日志的线程数。发送是非阻塞的，连接不可写时不占用线程
+   */
+  private int logSenderThreads = 4;
+
+  /**
+   * 是否把结束的任务日志加入归档，用于搜索历史日志
+   */
+  private boolean logArchiveEnabled = true;
+
+  /**
+   * 构建耗时百分位数的统计时间范围
+   */
+  private Duration metricsWindow = Duration.ofHours(1);
+
+  /**
+   * 获得工作目录下的路径
+   */
+  public Path workPath(String first, String... more) {
+    return Path.of(workDir).resolve(Path.of(first, more));
+  }
+
+  /**
+   * 获得 JDK 中的命令
+   */
+  public String jdkTool(String name) {
+    var home = jdkHome == null || jdkHome.isBlank() ? System.getProperty("java.home") : jdkHome;
+    return Path.of(home, "bin", name).toString();
+  }
 }
@@ -0,0 +1,176 @@
+package com.hyd.jsp.archive;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.model.CdsParams;
+import com.hyd.jsp.utils.Commands;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 生成 AppCDS 归档。
+ * <p>
+ * 服务包中的 jar 文件复制到临时目录，以服务包的文件结构用 -XX:ArchiveClassesAtExit 启动服务，
+ * 服务退出时 JVM 把加载过的类写入归档。服务包中加入归档 {project}/app.jsa 和启动脚本 {project}/bin/start-cds.sh。
+ * <p>
+ * JVM 使用归档前会校验 jar 文件的修改时间，而解压后的修改时间与打包时不一定相同，
+ * 所以训练前把 jar 文件的修改时间统一设为固定值，启动脚本在启动前同样设置（无法修改时给出警告）。
+ */
+@Component
+@Slf4j
+public class AppCds {
+
+  public static final String ARCHIVE_NAME = "app.jsa";
+
+  public static final String SCRIPT_NAME = "start-cds.sh";
+
+  private static final Instant JAR_TIME = Instant.parse("2000-01-01T00:00:00Z");
+
+  // 通知退出后等待服务写入归档的时间
+  private static final long EXIT_TIMEOUT_SECONDS = 120;
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  /**
+   * 训练并把归档和启动脚本加入服务包
+   *
+   * @param project    项目名称
+   * @param entries    服务包的文件，其中的 jar 文件会替换为临时目录中的副本
+   * @param cdsParams  AppCDS 配置
+   * @param runtimeDir 服务包中的精简运行时，为空表示没有，此时使用 jsp.jdk-home 训练
+   * @param stagingDir 临时目录，服务包生成之后才能删除
+   * @param logFile    日志文件，训练的输出追加到其中
+   */
+  public void generate(
+    String project, SortedMap<String, Path> entries, CdsParams cdsParams, Path runtimeDir, Path stagingDir, Path logFile
+  ) throws IOException, InterruptedException {
+
+    var mainJar = mainJar(project, entries, cdsParams);
+    var jarTime = FileTime.from(JAR_TIME);
+    for (var entry : entries.entrySet()) {
+      if (entry.getKey().endsWith(".jar")) {
+        var stagedFile = stagingDir.resolve(entry.getKey());
+        Files.createDirectories(stagedFile.getParent());
+        Files.copy(entry.getValue(), stagedFile);
+        Files.setLastModifiedTime(stagedFile, jarTime);
+        entry.setValue(stagedFile);
+      }
+    }
+
+    var serviceDir = stagingDir.resolve(project);
+    var command = new ArrayList<String>();
+    // 归档只对生成它的 JVM 有效，有精简运行时时用运行时训练
+    command.add(runtimeDir != null ? runtimeDir.resolve("bin").resolve("java").toAbsolutePath().toString() : config.jdkTool("java"));
+    command.add("-XX:ArchiveClassesAtExit=" + ARCHIVE_NAME);
+    command.addAll(cdsParams.getJvmArgs());
+    command.add("-jar");
+    command.add(mainJar);
+    command.addAll(cdsParams.getTrainingArgs());
+
+    var trainingLog = stagingDir.resolve("training.log");
+    var start = System.currentTimeMillis();
+    try {
+      train(command, serviceDir, trainingLog, cdsParams);
+    } finally {
+      Commands.appendLog(trainingLog, logFile, "AppCDS training");
+    }
+
+    var archiveFile = serviceDir.resolve(ARCHIVE_NAME);
+    if (!Files.isRegularFile(archiveFile)) {
+      throw new IllegalStateException("AppCDS 训练没有生成归档，请查看构建日志");
+    }
+    log.info("AppCDS archive of project {} generated in {} ms, {} bytes",
+      project, System.currentTimeMillis() - start, Files.size(archiveFile));
+
+    var scriptFile = serviceDir.resolve("bin").resolve(SCRIPT_NAME);
+    Files.createDirectories(scriptFile.getParent());
+    Files.writeString(scriptFile, startScript(mainJar, cdsParams.getJvmArgs()));
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      Files.setPosixFilePermissions(scriptFile, PosixFilePermissions.fromString("rwxr-xr-x"));
+    }
+
+    entries.put(project + "/" + ARCHIVE_NAME, archiveFile);
+    entries.put(project + "/bin/" + SCRIPT_NAME, scriptFile);
+  }
+
+  private void train(
+    List<String> command, Path serviceDir, Path trainingLog, CdsParams cdsParams
+  ) throws IOException, InterruptedException {
+    var process = new ProcessBuilder(command)
+      .directory(serviceDir.toFile())
+      .redirectErrorStream(true)
+      .redirectOutput(trainingLog.toFile())
+      .start();
+
+    try {
+      // 服务一般不会自己退出，训练时长到了之后通知退出
+      if (!process.waitFor(cdsParams.getTrainingSeconds(), TimeUnit.SECONDS)) {
+        process.destroy();
+        if (!process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          process.destroyForcibly();
+          throw new IllegalStateException("AppCDS 训练的服务在 " + EXIT_TIMEOUT_SECONDS + " 秒内没有退出");
+        }
+      }
+    } catch (InterruptedException e) {
+      process.destroyForcibly();
+      throw e;
+    }
+  }
+
+  private static String mainJar(String project, SortedMap<String, Path> entries, CdsParams cdsParams) {
+    var prefix = project + "/";
+    var jars = entries.keySet().stream()
+      .filter(name -> name.startsWith(prefix) && name.endsWith(".jar") && name.indexOf('/', prefix.length()) < 0)
+      .map(name -> name.substring(prefix.length()))
+      .collect(Collectors.toList());
+
+    if (StringUtils.isNotBlank(cdsParams.getMainJar())) {
+      if (!jars.contains(cdsParams.getMainJar())) {
+        throw new IllegalStateException("构建产物中没有 " + cdsParams.getMainJar());
+      }
+      return cdsParams.getMainJar();
+    }
+    if (jars.size() != 1) {
+      throw new IllegalStateException("构建产物中有多个 jar 文件，需要指定 cdsParams.mainJar");
+    }
+    return jars.get(0);
+  }
+
+  private static String startScript(String mainJar, List<String> jvmArgs) {
+    var jvmArgsText = jvmArgs.stream().map(AppCds::quote).collect(Collectors.joining(" "));
+    return "#!/bin/sh\n"
+      + "# 使用 AppCDS 归档启动服务。归档只对生成它的 JDK 有效，JDK 不同时 JVM 忽略归档正常启动。\n"
+      + "# 可以通过环境变量 JAVA 指定 java 命令，默认使用服务包中的精简运行时，没有时使用 PATH 中的 java；JAVA_OPTS 指定其他 JVM 参数\n"
+      + "cd \"$(dirname \"$0\")/..\" || exit 1\n"
+      + "if [ -z \"$JAVA\" ] && [ -x " + JlinkRuntime.RUNTIME_DIRECTORY + "/bin/java ]; then\n"
+      + "  JAVA=" + JlinkRuntime.RUNTIME_DIRECTORY + "/bin/java\n"
+      + "fi\n"
+      + "\n"
+      + "# JVM 会校验 jar 文件的修改时间，恢复为生成归档时的时间。只修改时间不同的文件，安装目录只读时需要在安装时修改\n"
+      + "if ! TZ=UTC find . -name '*.jar' -newermt '2000-01-01 00:00:00' -exec env TZ=UTC touch -t 200001010000.00 {} + 2>/dev/null; then\n"
+      + "  echo \"start-cds.sh: 无法修改 jar 文件的修改时间（安装目录只读？），AppCDS 归档不会生效\" >&2\n"
+      + "fi\n"
+      + "\n"
+      + "exec \"${JAVA:-java}\" -XX:SharedArchiveFile=" + ARCHIVE_NAME + " -Xshare:auto " + jvmArgsText
+      + " $JAVA_OPTS -jar " + quote(mainJar) + " \"$@\"\n";
+  }
+
+  private static String quote(String arg) {
+    return "'" + arg.replace("'", "'\\''") + "'";
+  }
+}
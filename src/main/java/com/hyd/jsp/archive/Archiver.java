@@ -0,0 +1,157 @@
+package com.hyd.jsp.archive;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.model.ArchiveFormat;
+import com.hyd.jsp.model.ArchiveParams;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+
+/**
+ * 多线程打包。
+ * <p>
+ * zip：条目在线程池中压缩，每个线程压缩的条目依次写入该线程的临时文件（ParallelScatterZipCreator）。
+ * 写入 zip 文件时按添加的顺序逐个取出每个条目所在临时文件中的下一个条目，
+ * 所以条目仍按名称的顺序写入，同样的输入得到同样的压缩包。jar、zip 等已压缩的文件直接存储，不再压缩。
+ * tar.gz：tar 流由 {@link ParallelGzipOutputStream} 分块并行压缩。
+ * 两种格式都通过 FileChannel 边压缩边写出，不在内存中保存整个压缩包。
+ * <p>
+ * 所有任务共用一个 jsp.archive-threads 大小的线程池，同时打包的任务再多，压缩线程数也不会超过这个值；
+ * 每个任务同时使用的线程数由 archiveParams.threads 限制。
+ */
+@Component
+public class Archiver {
+
+  private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(".jar", ".war", ".zip", ".gz", ".jsa");
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  private ExecutorService pool;
+
+  @PostConstruct
+  private void init() {
+    var threadCounter = new AtomicInteger();
+    this.pool = Executors.newFixedThreadPool(Math.max(1, config.getArchiveThreads()), r -> {
+      var thread = new Thread(r, "archiver-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    this.pool.shutdownNow();
+  }
+
+  /**
+   * 将文件打包
+   *
+   * @param entries 条目名称 -> 文件，按迭代顺序写入（调用方传入 TreeMap，即条目名称的顺序）
+   * @param target  压缩包文件
+   * @param params  打包参数
+   */
+  public void archive(Map<String, Path> entries, Path target, ArchiveParams params) throws IOException, InterruptedException {
+    params.validate();
+    var poolSize = Math.max(1, config.getArchiveThreads());
+    var threads = params.getThreads() > 0 ? Math.min(params.getThreads(), poolSize) : poolSize;
+    // 压缩完成后 ParallelScatterZipCreator 会关闭传入的线程池，所以每次打包使用单独的 BoundedExecutor
+    var executor = new BoundedExecutor(pool, threads);
+    try {
+      if (params.getFormat() == ArchiveFormat.TAR_GZ) {
+        writeTarGz(entries, target, params.getCompressionLevel(), executor, threads);
+      } else if (params.getFormat() == ArchiveFormat.ZIP) {
+        writeZip(entries, target, params.getCompressionLevel(), executor, target.getParent());
+      } else {
+        throw new IllegalArgumentException("Unsupported archive format " + params.getFormat());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void writeZip(
+    Map<String, Path> entries, Path target, int level, ExecutorService executor, Path tempDir
+  ) throws IOException, InterruptedException {
+
+    var creator = new ParallelScatterZipCreator(executor, new DefaultBackingStoreSupplier(tempDir), level);
+    for (var entry : entries.entrySet()) {
+      var file = entry.getValue();
+      var zipEntry = new ZipArchiveEntry(entry.getKey());
+      zipEntry.setMethod(isCompressed(entry.getKey()) ? ZipEntry.STORED : ZipEntry.DEFLATED);
+      zipEntry.setSize(Files.size(file));
+      zipEntry.setTime(Files.getLastModifiedTime(file).toMillis());
+      if (Files.isExecutable(file)) {
+        zipEntry.setUnixMode(0100755);
+      }
+      creator.addArchiveEntry(() -> ZipArchiveEntryRequest.createZipArchiveEntryRequest(zipEntry, () -> open(file)));
+    }
+
+    try (var channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+         var zipOut = new ZipArchiveOutputStream(channel)) {
+      creator.writeTo(zipOut);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to create " + target, e.getCause());
+    }
+  }
+
+  private void writeTarGz(
+    Map<String, Path> entries, Path target, int level, ExecutorService executor, int threads
+  ) throws IOException {
+
+    try (var channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+         var gzipOut = new ParallelGzipOutputStream(
+           new BufferedOutputStream(Channels.newOutputStream(channel), 256 * 1024), executor, level, threads);
+         var tarOut = new TarArchiveOutputStream(gzipOut, 64 * 1024)) {
+
+      tarOut.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+      tarOut.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+
+      for (var entry : entries.entrySet()) {
+        var file = entry.getValue();
+        var tarEntry = new TarArchiveEntry(entry.getKey());
+        tarEntry.setSize(Files.size(file));
+        tarEntry.setModTime(Files.getLastModifiedTime(file));
+        tarEntry.setMode(Files.isExecutable(file) ? 0100755 : 0100644);
+        tarOut.putArchiveEntry(tarEntry);
+        Files.copy(file, tarOut);
+        tarOut.closeArchiveEntry();
+      }
+      tarOut.finish();
+    }
+  }
+
+  static boolean isCompressed(String name) {
+    var dotIndex = name.lastIndexOf('.');
+    return dotIndex >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(dotIndex).toLowerCase());
+  }
+
+  private static InputStream open(Path file) {
+    try {
+      return Files.newInputStream(file);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
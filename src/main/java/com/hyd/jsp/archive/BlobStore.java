@@ -0,0 +1,62 @@
+package com.hyd.jsp.archive;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.cache.FileHashCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+/**
+ * 所有项目共享的文件存储，文件按内容摘要存放，相同内容只保存一份：
+ * <pre>
+ * blobs/{ab}/{sha256}
+ * </pre>
+ */
+@Component
+public class BlobStore {
+
+  private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  @Autowired
+  private FileHashCache fileHashCache;
+
+  /**
+   * 保存文件，已存在相同内容时不再复制
+   *
+   * @return 文件内容的摘要
+   */
+  public String put(Path file) throws IOException {
+    var hash = fileHashCache.sha256(file);
+    var blobFile = blobFile(hash);
+    if (!Files.exists(blobFile)) {
+      Files.createDirectories(blobFile.getParent());
+      var tempFile = Files.createTempFile(blobFile.getParent(), hash, ".tmp");
+      Files.copy(file, tempFile, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(tempFile, blobFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return hash;
+  }
+
+  /**
+   * 获得文件路径，不存在时返回 null
+   */
+  public Path get(String hash) {
+    if (!HASH_PATTERN.matcher(hash).matches()) {
+      return null;
+    }
+    var blobFile = blobFile(hash);
+    return Files.isRegularFile(blobFile) ? blobFile : null;
+  }
+
+  private Path blobFile(String hash) {
+    return config.workPath("blobs", hash.substring(0, 2), hash);
+  }
+}
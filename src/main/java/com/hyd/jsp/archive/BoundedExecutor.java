@@ -0,0 +1,110 @@
+package com.hyd.jsp.archive;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在共享线程池上执行任务，同时执行的任务数不超过 maxConcurrency，其余任务在本对象中排队。
+ * shutdown 和 awaitTermination 只针对通过本对象提交的任务，不会关闭共享线程池。
+ */
+class BoundedExecutor extends AbstractExecutorService {
+
+  private final Executor pool;
+
+  private final int maxConcurrency;
+
+  private final Queue<Runnable> queue = new ArrayDeque<>();
+
+  private int running;
+
+  private boolean shutdown;
+
+  BoundedExecutor(Executor pool, int maxConcurrency) {
+    this.pool = pool;
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+  }
+
+  @Override
+  public synchronized void execute(Runnable command) {
+    if (shutdown) {
+      throw new RejectedExecutionException("Executor is shut down");
+    }
+    queue.add(command);
+    dispatch();
+  }
+
+  private synchronized void dispatch() {
+    while (running < maxConcurrency && !queue.isEmpty()) {
+      var task = queue.poll();
+      running++;
+      try {
+        pool.execute(() -> {
+          try {
+            task.run();
+          } finally {
+            finished();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        running--;
+        throw e;
+      }
+    }
+  }
+
+  private synchronized void finished() {
+    running--;
+    if (!queue.isEmpty()) {
+      dispatch();
+    }
+    if (running == 0) {
+      notifyAll();
+    }
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    shutdown = true;
+  }
+
+  /**
+   * 丢弃尚未开始的任务，已开始的任务继续执行
+   */
+  @Override
+  public synchronized List<Runnable> shutdownNow() {
+    shutdown = true;
+    var pending = new ArrayList<>(queue);
+    queue.clear();
+    notifyAll();
+    return pending;
+  }
+
+  @Override
+  public synchronized boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public synchronized boolean isTerminated() {
+    return shutdown && running == 0 && queue.isEmpty();
+  }
+
+  @Override
+  public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    var deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!isTerminated()) {
+      var remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return true;
+  }
+}
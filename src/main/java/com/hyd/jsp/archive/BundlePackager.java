@@ -0,0 +1,212 @@
+package com.hyd.jsp.archive;
+
+import com.hyd.jsp.model.ArchiveFormat;
+import com.hyd.jsp.model.ArchiveParams;
+import com.hyd.jsp.model.PackagingParams;
+import com.hyd.jsp.utils.Jackson;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * 将构建结果组装为服务包。服务包的结构为：
+ * <pre>
+ * {project}/*.jar      构建产物目录下的 jar 文件
+ * {project}/lib/       构建产物目录下的 lib 目录（依赖）
+ * {project}/bin/       源码中的启动脚本
+ * {project}/runtime/   启用精简运行时时由 jlink 生成的运行时
+ * {project}/app.jsa    启用 AppCDS 时的归档，同时 bin 下加入使用归档的启动脚本 start-cds.sh
+ * </pre>
+ * 分层服务包中，lib 下的文件属于依赖层（名称包含 SNAPSHOT 的属于快照依赖层），其他文件属于应用层。
+ * 需要生成增量包时，除压缩包外也会生成同样的分层清单，作为之后计算增量的依据。
+ */
+@Component
+@Slf4j
+public class BundlePackager {
+
+  @Autowired
+  private Archiver archiver;
+
+  @Autowired
+  private BlobStore blobStore;
+
+  @Autowired
+  private AppCds appCds;
+
+  @Autowired
+  private JlinkRuntime jlinkRuntime;
+
+  /**
+   * 生成服务包
+   *
+   * @param project         项目名称
+   * @param sourceDir       源码目录
+   * @param packagingParams 构建配置
+   * @param artifactDir     产物目录
+   * @param logFile         日志文件
+   *
+   * @return 产物文件名列表
+   */
+  public List<String> pack(
+    String project, Path sourceDir, PackagingParams packagingParams, Path artifactDir, Path logFile
+  ) throws IOException, InterruptedException {
+
+    var outputDir = sourceDir.resolve(packagingParams.getBuildParams().getOutputDirectory());
+    if (!Files.isDirectory(outputDir)) {
+      throw new IllegalStateException("构建产物目录 " + outputDir + " 不存在");
+    }
+
+    var jars = listJars(outputDir);
+    if (jars.isEmpty()) {
+      throw new IllegalStateException("构建产物目录 " + outputDir + " 中没有 jar 文件");
+    }
+
+    Files.createDirectories(artifactDir);
+    var archiveParams = packagingParams.getArchiveParams();
+
+    if (archiveParams.getFormat() == ArchiveFormat.NONE && !archiveParams.isLayered()) {
+      if (packagingParams.getCdsParams().isEnabled() || packagingParams.getJlinkParams().isEnabled()) {
+        log.warn("AppCDS archive and runtime of project {} are skipped because no bundle is packed", project);
+      }
+      var artifacts = new ArrayList<String>();
+      for (var jar : jars) {
+        var fileName = jar.getFileName().toString();
+        Files.copy(jar, artifactDir.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+        artifacts.add(fileName);
+      }
+      return artifacts;
+    }
+
+    var entries = new TreeMap<String, Path>();
+    for (var jar : jars) {
+      entries.put(project + "/" + jar.getFileName(), jar);
+    }
+    addDirectory(entries, outputDir.resolve("lib"), project + "/lib/");
+    if (StringUtils.isNotBlank(archiveParams.getScriptsDirectory())) {
+      addDirectory(entries, sourceDir.resolve(archiveParams.getScriptsDirectory()), project + "/bin/");
+    }
+
+    var cdsParams = packagingParams.getCdsParams();
+    Path runtimeDir = null;
+    if (packagingParams.getJlinkParams().isEnabled()) {
+      runtimeDir = jlinkRuntime.generate(project, entries, packagingParams.getJlinkParams(), cdsParams.isEnabled(), logFile);
+    }
+    try {
+      if (!cdsParams.isEnabled()) {
+        return packEntries(project, entries, archiveParams, artifactDir);
+      }
+
+      var cdsStagingDir = Files.createTempDirectory(artifactDir.getParent(), ".cds-");
+      try {
+        appCds.generate(project, entries, cdsParams, runtimeDir, cdsStagingDir, logFile);
+        return packEntries(project, entries, archiveParams, artifactDir);
+      } finally {
+        FileSystemUtils.deleteRecursively(cdsStagingDir);
+      }
+    } finally {
+      if (runtimeDir != null) {
+        jlinkRuntime.release(runtimeDir);
+      }
+    }
+  }
+
+  private List<String> packEntries(
+    String project, SortedMap<String, Path> entries, ArchiveParams archiveParams, Path artifactDir
+  ) throws IOException, InterruptedException {
+    if (archiveParams.isLayered()) {
+      return List.of(writeLayers(project, entries, artifactDir));
+    }
+
+    var artifacts = new ArrayList<String>();
+    if (archiveParams.getFormat() != ArchiveFormat.NONE) {
+      var archiveName = project + archiveParams.getFormat().getExtension();
+      var start = System.currentTimeMillis();
+      archiver.archive(entries, artifactDir.resolve(archiveName), archiveParams);
+      log.info("{} entries packed into {} in {} ms", entries.size(), archiveName, System.currentTimeMillis() - start);
+      artifacts.add(archiveName);
+    }
+
+    // 增量包需要与上次构建的文件比较，所以文件也要保存
+    if (archiveParams.isDelta()) {
+      artifacts.add(writeLayers(project, entries, artifactDir));
+    }
+    return artifacts;
+  }
+
+  /**
+   * 服务包的文件清单名称
+   */
+  public static String layersManifestName(String project) {
+    return project + "-layers.json";
+  }
+
+  private String writeLayers(String project, SortedMap<String, Path> entries, Path artifactDir) throws IOException {
+    var layers = new LinkedHashMap<String, LayersManifest.Layer>();
+    for (var name : List.of(LayersManifest.DEPENDENCIES, LayersManifest.SNAPSHOT_DEPENDENCIES, LayersManifest.APPLICATION)) {
+      var layer = new LayersManifest.Layer();
+      layer.setName(name);
+      layers.put(name, layer);
+    }
+
+    var start = System.currentTimeMillis();
+    for (var entry : entries.entrySet()) {
+      var manifestEntry = new LayersManifest.Entry();
+      manifestEntry.setPath(entry.getKey());
+      manifestEntry.setBlob(blobStore.put(entry.getValue()));
+      manifestEntry.setSize(Files.size(entry.getValue()));
+      manifestEntry.setExecutable(Files.isExecutable(entry.getValue()));
+      layers.get(layerOf(project, entry.getKey())).getEntries().add(manifestEntry);
+    }
+
+    var manifest = new LayersManifest();
+    manifest.setProject(project);
+    manifest.getLayers().addAll(layers.values());
+
+    var manifestName = layersManifestName(project);
+    Files.writeString(artifactDir.resolve(manifestName), Jackson.toIndentString(manifest));
+    log.info("{} entries stored into layers of {} in {} ms", entries.size(), manifestName, System.currentTimeMillis() - start);
+    return manifestName;
+  }
+
+  private static String layerOf(String project, String entryName) {
+    if (!entryName.startsWith(project + "/lib/")) {
+      return LayersManifest.APPLICATION;
+    }
+    return entryName.contains("SNAPSHOT") ? LayersManifest.SNAPSHOT_DEPENDENCIES : LayersManifest.DEPENDENCIES;
+  }
+
+  private static List<Path> listJars(Path outputDir) throws IOException {
+    try (var files = Files.list(outputDir)) {
+      return files
+        .filter(f -> Files.isRegularFile(f) && f.getFileName().toString().endsWith(".jar"))
+        .sorted()
+        .collect(Collectors.toList());
+    }
+  }
+
+  private static void addDirectory(SortedMap<String, Path> entries, Path dir, String prefix) throws IOException {
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+    try (var files = Files.walk(dir)) {
+      for (var file : (Iterable<Path>) files::iterator) {
+        if (Files.isRegularFile(file)) {
+          entries.put(prefix + dir.relativize(file).toString().replace('\\', '/'), file);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package com.hyd.jsp.archive;
+
+import com.hyd.jsp.utils.Hashes;
+import com.hyd.jsp.utils.Jackson;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 将增量包应用到已部署的服务包目录。所有文件先生成到临时文件并校验摘要，全部成功后才替换原文件。
+ * 已经是新内容的文件会跳过，所以重复应用同一个增量包不会出错。
+ * <p>
+ * 命令行用法：
+ * <pre>
+ * java -jar java-service-packager.jar apply-delta {增量包} {服务包所在目录}
+ * </pre>
+ */
+public class DeltaApplier {
+
+  public static final String COMMAND = "apply-delta";
+
+  private static final String TEMP_SUFFIX = ".delta-tmp";
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: java -jar java-service-packager.jar " + COMMAND + " <delta.zip> <directory>");
+      System.exit(1);
+    }
+
+    var manifest = apply(Path.of(args[0]), Path.of(args[1]));
+    System.out.printf("Applied delta of project %s from %s to %s: %d files updated, %d removed%n",
+      manifest.getProject(), manifest.getFrom(), manifest.getTo(),
+      manifest.getFiles().size(), manifest.getRemoved().size());
+  }
+
+  /**
+   * 应用增量包
+   *
+   * @param deltaFile 增量包文件
+   * @param directory 服务包所在目录，即 {project} 目录的上级目录
+   *
+   * @return 增量包的清单
+   */
+  public static DeltaManifest apply(Path deltaFile, Path directory) throws IOException {
+    var root = directory.toAbsolutePath().normalize();
+    try (var zip = new ZipFile(deltaFile)) {
+      var manifestEntry = zip.getEntry(DeltaManifest.FILE_NAME);
+      if (manifestEntry == null) {
+        throw new IOException(deltaFile + " is not a delta package");
+      }
+
+      DeltaManifest manifest;
+      try (var in = zip.getInputStream(manifestEntry)) {
+        manifest = Jackson.deserializeStandardJson(in, DeltaManifest.class);
+      }
+
+      Map<Path, Path> staged = new LinkedHashMap<>();
+      try {
+        for (var fileDelta : manifest.getFiles()) {
+          var target = resolve(root, fileDelta.getPath());
+          if (Files.isRegularFile(target) && Hashes.sha256Hex(target).equals(fileDelta.getBlob())) {
+            continue;
+          }
+          var tempFile = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+          Files.createDirectories(target.getParent());
+          staged.put(tempFile, target);
+          stage(zip, fileDelta, target, tempFile);
+        }
+
+        for (var entry : staged.entrySet()) {
+          Files.move(entry.getKey(), entry.getValue(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        staged.clear();
+      } finally {
+        for (var tempFile : staged.keySet()) {
+          Files.deleteIfExists(tempFile);
+        }
+      }
+
+      for (var path : manifest.getRemoved()) {
+        Files.deleteIfExists(resolve(root, path));
+      }
+      return manifest;
+    }
+  }
+
+  private static void stage(ZipFile zip, DeltaManifest.FileDelta fileDelta, Path target, Path tempFile) throws IOException {
+    if (fileDelta.getAction() == DeltaManifest.Action.PATCH) {
+      if (!Files.isRegularFile(target) || !Hashes.sha256Hex(target).equals(fileDelta.getBase())) {
+        throw new IOException(target + " does not match the base of the delta package");
+      }
+      var patchEntry = zip.getEntry("patches/" + fileDelta.getPath());
+      if (patchEntry == null) {
+        throw new IOException("Missing patch of " + fileDelta.getPath());
+      }
+      try (var in = zip.getInputStream(patchEntry); var out = Files.newOutputStream(tempFile)) {
+        ZipPatch.apply(target, in, out);
+      }
+    } else {
+      var fileEntry = zip.getEntry("files/" + fileDelta.getPath());
+      if (fileEntry == null) {
+        throw new IOException("Missing file " + fileDelta.getPath());
+      }
+      try (var in = zip.getInputStream(fileEntry)) {
+        Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+
+    if (!Hashes.sha256Hex(tempFile).equals(fileDelta.getBlob())) {
+      throw new IOException("Checksum mismatch of " + fileDelta.getPath());
+    }
+    if (fileDelta.isExecutable() && Files.getFileStore(tempFile).supportsFileAttributeView("posix")) {
+      Files.setPosixFilePermissions(tempFile, PosixFilePermissions.fromString("rwxr-xr-x"));
+    }
+  }
+
+  private static Path resolve(Path root, String path) throws IOException {
+    var resolved = root.resolve(path).normalize();
+    if (!resolved.startsWith(root) || resolved.equals(root)) {
+      throw new IOException("Invalid path " + path);
+    }
+    return resolved;
+  }
+}
@@ -0,0 +1,60 @@
+package com.hyd.jsp.archive;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 增量包的清单，记录两次构建的服务包之间变化的文件
+ */
+@Data
+public class DeltaManifest {
+
+  public static final String FILE_NAME = "delta-manifest.json";
+
+  private String project;
+
+  // 起始构建的任务 ID
+  private String from;
+
+  // 目标构建的任务 ID
+  private String to;
+
+  private List<FileDelta> files = new ArrayList<>();
+
+  // 删除的文件路径
+  private List<String> removed = new ArrayList<>();
+
+  @Data
+  public static class FileDelta {
+
+    // 文件在服务包中的路径
+    private String path;
+
+    private Action action;
+
+    // 应用补丁前文件内容的摘要，仅 PATCH
+    private String base;
+
+    // 新文件内容的摘要
+    private String blob;
+
+    private long size;
+
+    private boolean executable;
+  }
+
+  public enum Action {
+
+    /**
+     * 增量包中的 files/{path} 是完整的新文件
+     */
+    FULL,
+
+    /**
+     * 增量包中的 patches/{path} 是 {@link ZipPatch} 补丁
+     */
+    PATCH
+  }
+}
@@ -0,0 +1,173 @@
+package com.hyd.jsp.archive;
+
+import com.hyd.jsp.utils.Jackson;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+
+/**
+ * 生成两次构建的服务包之间的增量包。增量包是一个 zip 文件：
+ * <pre>
+ * delta-manifest.json  {@link DeltaManifest}
+ * files/{path}         新增的文件，以及变化较大的文件
+ * patches/{path}       变化的 jar 文件的 {@link ZipPatch} 补丁
+ * </pre>
+ * 未变化的文件不出现在增量包中，所以增量包的大小只与变化的内容有关。增量包由 {@link DeltaApplier} 应用。
+ */
+@Component
+@Slf4j
+public class DeltaPackager {
+
+  @Autowired
+  private BlobStore blobStore;
+
+  /**
+   * 生成增量包
+   *
+   * @param project      项目名称
+   * @param from         起始构建的任务 ID
+   * @param fromManifest 起始构建的文件清单
+   * @param to           目标构建的任务 ID
+   * @param toManifest   目标构建的文件清单
+   * @param target       增量包文件
+   */
+  public void create(
+    String project, String from, LayersManifest fromManifest, String to, LayersManifest toManifest, Path target
+  ) throws IOException {
+
+    var start = System.currentTimeMillis();
+    var fromEntries = entriesOf(fromManifest);
+    var toEntries = entriesOf(toManifest);
+
+    var manifest = new DeltaManifest();
+    manifest.setProject(project);
+    manifest.setFrom(from);
+    manifest.setTo(to);
+
+    var contents = new LinkedHashMap<String, Path>();
+    var tempDir = Files.createTempDirectory(target.getParent(), "delta");
+    try {
+      for (var toEntry : toEntries.values()) {
+        var fromEntry = fromEntries.get(toEntry.getPath());
+        if (fromEntry != null && fromEntry.getBlob().equals(toEntry.getBlob())) {
+          continue;
+        }
+
+        var fileDelta = new DeltaManifest.FileDelta();
+        fileDelta.setPath(toEntry.getPath());
+        fileDelta.setBlob(toEntry.getBlob());
+        fileDelta.setSize(toEntry.getSize());
+        fileDelta.setExecutable(toEntry.isExecutable());
+
+        var newFile = requireBlob(toEntry.getBlob());
+        var patchFile = fromEntry == null ? null : createPatch(requireBlob(fromEntry.getBlob()), newFile, tempDir);
+        if (patchFile != null) {
+          fileDelta.setAction(DeltaManifest.Action.PATCH);
+          fileDelta.setBase(fromEntry.getBlob());
+          contents.put("patches/" + toEntry.getPath(), patchFile);
+        } else {
+          fileDelta.setAction(DeltaManifest.Action.FULL);
+          contents.put("files/" + toEntry.getPath(), newFile);
+        }
+        manifest.getFiles().add(fileDelta);
+      }
+
+      for (var path : fromEntries.keySet()) {
+        if (!toEntries.containsKey(path)) {
+          manifest.getRemoved().add(path);
+        }
+      }
+
+      writeDelta(manifest, contents, target);
+    } finally {
+      for (var file : contents.values()) {
+        if (file.startsWith(tempDir)) {
+          Files.deleteIfExists(file);
+        }
+      }
+      Files.deleteIfExists(tempDir);
+    }
+
+    log.info("Delta of project {} from {} to {}: {} files changed, {} removed, {} bytes in {} ms",
+      project, from, to, manifest.getFiles().size(), manifest.getRemoved().size(),
+      Files.size(target), System.currentTimeMillis() - start);
+  }
+
+  /**
+   * 只有 zip 格式的文件才生成补丁，补丁不比新文件小时返回 null
+   */
+  private static Path createPatch(Path oldFile, Path newFile, Path tempDir) throws IOException {
+    if (!ZipPatch.isZip(newFile)) {
+      return null;
+    }
+
+    var patchFile = Files.createTempFile(tempDir, "patch", ".tmp");
+    try (var out = Files.newOutputStream(patchFile)) {
+      ZipPatch.create(oldFile, newFile, out);
+    } catch (IOException e) {
+      log.debug("Failed to create patch for {}", newFile, e);
+      Files.delete(patchFile);
+      return null;
+    }
+
+    if (Files.size(patchFile) >= Files.size(newFile)) {
+      Files.delete(patchFile);
+      return null;
+    }
+    return patchFile;
+  }
+
+  private static void writeDelta(DeltaManifest manifest, Map<String, Path> contents, Path target) throws IOException {
+    var tempFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+    try {
+      try (var zipOut = new ZipArchiveOutputStream(tempFile)) {
+        var manifestEntry = new ZipArchiveEntry(DeltaManifest.FILE_NAME);
+        zipOut.putArchiveEntry(manifestEntry);
+        zipOut.write(Jackson.toIndentString(manifest).getBytes(StandardCharsets.UTF_8));
+        zipOut.closeArchiveEntry();
+
+        for (var content : contents.entrySet()) {
+          var entry = new ZipArchiveEntry(content.getKey());
+          entry.setMethod(Archiver.isCompressed(content.getKey()) && content.getKey().startsWith("files/")
+            ? ZipEntry.STORED : ZipEntry.DEFLATED);
+          zipOut.putArchiveEntry(entry);
+          Files.copy(content.getValue(), zipOut);
+          zipOut.closeArchiveEntry();
+        }
+      }
+      Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  private Path requireBlob(String hash) {
+    var blobFile = blobStore.get(hash);
+    if (blobFile == null) {
+      throw new IllegalStateException("文件 " + hash + " 不存在");
+    }
+    return blobFile;
+  }
+
+  private static Map<String, LayersManifest.Entry> entriesOf(LayersManifest manifest) {
+    var entries = new TreeMap<String, LayersManifest.Entry>();
+    for (var layer : manifest.getLayers()) {
+      for (var entry : layer.getEntries()) {
+        entries.put(entry.getPath(), entry);
+      }
+    }
+    return entries;
+  }
+}
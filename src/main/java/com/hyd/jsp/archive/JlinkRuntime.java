@@ -0,0 +1,390 @@
+package com.hyd.jsp.archive;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.cache.FileHashCache;
+import com.hyd.jsp.model.JlinkParams;
+import com.hyd.jsp.utils.Commands;
+import com.hyd.jsp.utils.Hashes;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.spi.ToolProvider;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+
+/**
+ * 生成精简运行时。
+ * <ul>
+ *   <li>jdeps 逐个分析服务包中的 jar 文件用到的 JDK 模块，结果按 jar 文件内容和 JDK 版本缓存，依赖不变时只需分析服务自身的 jar。
+ *   Spring Boot 等可执行 jar 中的依赖 jar（BOOT-INF/lib、WEB-INF/lib）解压后同样逐个分析</li>
+ *   <li>jlink 生成的运行时按模块集合、JDK 版本和 jlink 参数缓存，模块集合不变时直接使用</li>
+ * </ul>
+ * 两种缓存都按最近使用时间（文件修改时间）淘汰，个数见 jsp.jlink-runtime-cache-size 和 jsp.jlink-deps-cache-size。
+ * 使用运行本程序的 JDK 时，jdeps 和 jlink 在进程内执行，否则启动 jsp.jdk-home 下的命令。
+ */
+@Component
+@Slf4j
+public class JlinkRuntime {
+
+  /**
+   * 运行时在服务包中的目录
+   */
+  public static final String RUNTIME_DIRECTORY = "runtime";
+
+  // 可执行 jar 中的依赖 jar
+  private static final Pattern NESTED_JAR = Pattern.compile("(BOOT-INF|WEB-INF)/lib(-provided)?/[^/]+\\.jar");
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  @Autowired
+  private FileHashCache fileHashCache;
+
+  private volatile String jdkVersion;
+
+  // 正在打包的任务使用的运行时，不会被淘汰
+  private final Map<Path, Integer> runtimesInUse = new HashMap<>();
+
+  /**
+   * 生成运行时并加入服务包。服务包打包完成后需要调用 {@link #release(Path)}
+   *
+   * @param project     项目名称
+   * @param entries     服务包的文件
+   * @param jlinkParams 精简运行时配置
+   * @param withCds     是否同时生成 AppCDS 归档，是则在运行时中生成基础 CDS 归档
+   * @param logFile     日志文件
+   *
+   * @return 运行时目录
+   */
+  public Path generate(
+    String project, SortedMap<String, Path> entries, JlinkParams jlinkParams, boolean withCds, Path logFile
+  ) throws IOException, InterruptedException {
+
+    var start = System.currentTimeMillis();
+    var modules = new TreeSet<String>(jlinkParams.getAdditionalModules());
+    var analyzedJars = 0;
+    for (var entry : entries.entrySet()) {
+      if (entry.getKey().endsWith(".jar")) {
+        analyzedJars += analyze(entry.getValue(), modules) ? 1 : 0;
+      }
+    }
+    modules.add("java.base");
+
+    // JDK 21 起 --compress=0|1|2 已废弃，改用 zip-0 到 zip-9，zip-6 与原来的 2 相同
+    var compress = jdkFeatureVersion() >= 21 ? "--compress=zip-6" : "--compress=2";
+    var options = new ArrayList<String>(List.of("--no-header-files", "--no-man-pages", compress));
+    if (jlinkParams.isStripDebug()) {
+      options.add("--strip-debug");
+    }
+
+    var runtimeKey = Hashes.sha256Hex(
+      jdkVersion() + "\n" + String.join(",", modules) + "\n" + String.join(" ", options) + "\n" + withCds);
+    var runtimeDir = config.workPath("jlink", "runtimes", runtimeKey);
+    acquire(runtimeDir);
+    try {
+      if (Files.isDirectory(runtimeDir)) {
+        Files.setLastModifiedTime(runtimeDir, FileTime.from(Instant.now()));
+      } else {
+        link(modules, options, withCds, runtimeDir, logFile);
+      }
+      log.info("Runtime of project {} with modules {} ready in {} ms, {} jars analyzed",
+        project, modules, System.currentTimeMillis() - start, analyzedJars);
+
+      var prefix = project + "/" + RUNTIME_DIRECTORY + "/";
+      try (var files = Files.walk(runtimeDir)) {
+        for (var file : (Iterable<Path>) files::iterator) {
+          if (Files.isRegularFile(file)) {
+            entries.put(prefix + runtimeDir.relativize(file).toString().replace('\\', '/'), file);
+          }
+        }
+      }
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      release(runtimeDir);
+      throw e;
+    }
+
+    // 淘汰失败不影响打包
+    try {
+      evictRuntimes();
+      if (analyzedJars > 0) {
+        evictDeps();
+      }
+    } catch (IOException | UncheckedIOException e) {
+      log.warn("Failed to evict jlink caches", e);
+    }
+    return runtimeDir;
+  }
+
+  /**
+   * 服务包打包完成，运行时可以被淘汰
+   */
+  public synchronized void release(Path runtimeDir) {
+    runtimesInUse.computeIfPresent(runtimeDir, (dir, count) -> count > 1 ? count - 1 : null);
+  }
+
+  private synchronized void acquire(Path runtimeDir) {
+    runtimesInUse.merge(runtimeDir, 1, Integer::sum);
+  }
+
+  /**
+   * 分析 jar 文件用到的 JDK 模块，加入 modules
+   *
+   * @return 是否实际执行了分析（没有使用缓存）
+   */
+  private boolean analyze(Path jar, Set<String> modules) throws IOException, InterruptedException {
+    var cacheFile = depsCacheFile(fileHashCache.sha256(jar));
+    var cached = readDeps(cacheFile);
+    if (cached != null) {
+      addModules(cached, modules);
+      return false;
+    }
+
+    var result = new TreeSet<String>();
+    addModules(jdeps(jar), result);
+    analyzeNestedJars(jar, result);
+    writeDeps(cacheFile, String.join(",", result));
+    modules.addAll(result);
+    return true;
+  }
+
+  /**
+   * 解压可执行 jar 中的依赖 jar 并分析，结果按依赖 jar 的内容缓存
+   */
+  private void analyzeNestedJars(Path jar, Set<String> modules) throws IOException, InterruptedException {
+    try (var zipFile = new ZipFile(jar.toFile())) {
+      var nestedEntries = zipFile.stream()
+        .filter(e -> !e.isDirectory() && NESTED_JAR.matcher(e.getName()).matches())
+        .collect(Collectors.toList());
+      if (nestedEntries.isEmpty()) {
+        return;
+      }
+
+      var tempDir = config.workPath("jlink", "nested-" + System.nanoTime() + TEMP_SUFFIX);
+      Files.createDirectories(tempDir);
+      try {
+        for (var i = 0; i < nestedEntries.size(); i++) {
+          var nestedJar = tempDir.resolve(i + ".jar");
+          try (var in = zipFile.getInputStream(nestedEntries.get(i))) {
+            Files.copy(in, nestedJar);
+          }
+          var cacheFile = depsCacheFile(Hashes.sha256Hex(nestedJar));
+          var result = readDeps(cacheFile);
+          if (result == null) {
+            result = jdeps(nestedJar);
+            writeDeps(cacheFile, result);
+          }
+          addModules(result, modules);
+          Files.delete(nestedJar);
+        }
+      } finally {
+        FileSystemUtils.deleteRecursively(tempDir);
+      }
+      log.debug("{} nested jars of {} analyzed", nestedEntries.size(), jar.getFileName());
+    }
+  }
+
+  private String jdeps(Path jar) throws IOException, InterruptedException {
+    var output = runTool("jdeps", List.of("--ignore-missing-deps", "--print-module-deps",
+      "--multi-release", String.valueOf(jdkFeatureVersion()), jar.toAbsolutePath().toString()));
+    return output.lines().filter(l -> !l.isBlank()).reduce((a, b) -> b).orElse("").trim();
+  }
+
+  private Path depsCacheFile(String jarHash) throws IOException, InterruptedException {
+    var key = Hashes.sha256Hex(jdkVersion() + "\n" + jarHash);
+    return config.workPath("jlink", "deps", key.substring(0, 2), key);
+  }
+
+  /**
+   * 读取缓存的分析结果，同时更新最近使用时间
+   *
+   * @return 模块列表，没有缓存时返回 null
+   */
+  private static String readDeps(Path cacheFile) throws IOException {
+    try {
+      var result = Files.readString(cacheFile);
+      Files.setLastModifiedTime(cacheFile, FileTime.from(Instant.now()));
+      return result;
+    } catch (NoSuchFileException e) {
+      // 没有缓存或刚被淘汰
+      return null;
+    }
+  }
+
+  private static void writeDeps(Path cacheFile, String result) throws IOException {
+    Files.createDirectories(cacheFile.getParent());
+    var tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), TEMP_SUFFIX);
+    Files.writeString(tempFile, result);
+    Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * 删除超过个数的运行时，正在使用的除外
+   */
+  private synchronized void evictRuntimes() throws IOException {
+    var runtimesDir = config.workPath("jlink", "runtimes");
+    List<Path> runtimes;
+    try (var files = Files.list(runtimesDir)) {
+      runtimes = files.filter(f -> Files.isDirectory(f) && !f.getFileName().toString().endsWith(TEMP_SUFFIX))
+        .collect(Collectors.toList());
+    }
+    for (var runtimeDir : leastRecentlyUsed(runtimes, config.getJlinkRuntimeCacheSize())) {
+      if (!runtimesInUse.containsKey(runtimeDir)) {
+        log.info("Evicting runtime {}", runtimeDir.getFileName());
+        FileSystemUtils.deleteRecursively(runtimeDir);
+      }
+    }
+  }
+
+  /**
+   * 删除超过个数的分析结果
+   */
+  private synchronized void evictDeps() throws IOException {
+    List<Path> cacheFiles;
+    try (var files = Files.walk(config.workPath("jlink", "deps"), 2)) {
+      cacheFiles = files.filter(f -> Files.isRegularFile(f) && !f.getFileName().toString().endsWith(TEMP_SUFFIX))
+        .collect(Collectors.toList());
+    }
+    var evicted = leastRecentlyUsed(cacheFiles, config.getJlinkDepsCacheSize());
+    for (var cacheFile : evicted) {
+      Files.deleteIfExists(cacheFile);
+    }
+    if (!evicted.isEmpty()) {
+      log.info("{} jdeps results evicted", evicted.size());
+    }
+  }
+
+  /**
+   * 按修改时间从新到旧排列，返回超过 keep 个的部分
+   */
+  private static List<Path> leastRecentlyUsed(List<Path> files, int keep) throws IOException {
+    if (files.size() <= keep) {
+      return List.of();
+    }
+    var lastUsed = new HashMap<Path, FileTime>();
+    for (var file : files) {
+      try {
+        lastUsed.put(file, Files.getLastModifiedTime(file));
+      } catch (NoSuchFileException e) {
+        // 已被删除
+      }
+    }
+    return lastUsed.keySet().stream()
+      .sorted(Comparator.comparing(lastUsed::get, Comparator.reverseOrder()))
+      .skip(Math.max(0, keep))
+      .collect(Collectors.toList());
+  }
+
+  private void link(
+    Set<String> modules, List<String> options, boolean withCds, Path runtimeDir, Path logFile
+  ) throws IOException, InterruptedException {
+    Files.createDirectories(runtimeDir.getParent());
+    var tempDir = runtimeDir.resolveSibling(runtimeDir.getFileName() + "." + System.nanoTime() + TEMP_SUFFIX);
+
+    var args = new ArrayList<String>();
+    var jmods = Path.of(config.jdkTool("jlink")).getParent().resolveSibling("jmods");
+    if (Files.isDirectory(jmods)) {
+      args.add("--module-path");
+      args.add(jmods.toString());
+    }
+    args.add("--add-modules");
+    args.add(String.join(",", modules));
+    args.addAll(options);
+    args.add("--output");
+    args.add(tempDir.toAbsolutePath().toString());
+
+    try {
+      var output = new StringBuilder("jlink " + String.join(" ", args) + "\n");
+      output.append(runTool("jlink", args)).append('\n');
+      if (withCds) {
+        // jlink 生成的运行时没有基础 CDS 归档，AppCDS 的动态归档依赖于它
+        var java = tempDir.resolve("bin").resolve("java").toAbsolutePath().toString();
+        output.append(Commands.output(List.of(java, "-Xshare:dump"), tempDir)).append('\n');
+      }
+      var jlinkLog = tempDir.resolveSibling(tempDir.getFileName() + ".log");
+      Files.writeString(jlinkLog, output);
+      Commands.appendLog(jlinkLog, logFile, "jlink");
+
+      // 同时生成相同运行时的任务，只保留先完成的
+      try {
+        Files.move(tempDir, runtimeDir);
+      } catch (IOException e) {
+        if (!Files.isDirectory(runtimeDir)) {
+          throw e;
+        }
+      }
+    } finally {
+      FileSystemUtils.deleteRecursively(tempDir);
+    }
+  }
+
+  /**
+   * JDK 的主版本号，如 17.0.2 为 17
+   */
+  private int jdkFeatureVersion() throws IOException, InterruptedException {
+    var feature = jdkVersion().split("[.+-]")[0];
+    try {
+      return Integer.parseInt(feature);
+    } catch (NumberFormatException e) {
+      throw new IOException("Unrecognized JDK version " + jdkVersion(), e);
+    }
+  }
+
+  private String jdkVersion() throws IOException, InterruptedException {
+    if (jdkVersion == null) {
+      jdkVersion = runTool("jdeps", List.of("--version")).trim();
+    }
+    return jdkVersion;
+  }
+
+  private String runTool(String name, List<String> args) throws IOException, InterruptedException {
+    var tool = StringUtils.isBlank(config.getJdkHome()) ? ToolProvider.findFirst(name) : Optional.<ToolProvider>empty();
+    if (tool.isEmpty()) {
+      var command = new ArrayList<String>();
+      command.add(config.jdkTool(name));
+      command.addAll(args);
+      return Commands.output(command, Path.of("."));
+    }
+
+    var out = new StringWriter();
+    var writer = new PrintWriter(out);
+    var exitCode = tool.get().run(writer, writer, args.toArray(new String[0]));
+    writer.flush();
+    if (exitCode != 0) {
+      throw new IOException(name + " " + args + " exited with code " + exitCode + ": " + out);
+    }
+    return out.toString();
+  }
+
+  private static void addModules(String moduleList, Set<String> modules) {
+    for (var module : moduleList.split(",")) {
+      if (!module.isBlank()) {
+        modules.add(module.trim());
+      }
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package com.hyd.jsp.archive;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层服务包的清单。每层列出其中的文件，文件内容保存在 {@link BlobStore} 中
+ */
+@Data
+public class LayersManifest {
+
+  public static final String DEPENDENCIES = "dependencies";
+
+  public static final String SNAPSHOT_DEPENDENCIES = "snapshot-dependencies";
+
+  public static final String APPLICATION = "application";
+
+  private String project;
+
+  private List<Layer> layers = new ArrayList<>();
+
+  @Data
+  public static class Layer {
+
+    private String name;
+
+    private List<Entry> entries = new ArrayList<>();
+  }
+
+  @Data
+  public static class Entry {
+
+    // 文件在服务包中的路径
+    private String path;
+
+    // 文件内容的摘要
+    private String blob;
+
+    private long size;
+
+    private boolean executable;
+  }
+}
@@ -0,0 +1,190 @@
+package com.hyd.jsp.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 多线程 gzip 压缩输出流（与 pigz 的做法相同）。
+ * <p>
+ * 输入按固定大小分块，每块在线程池中独立压缩为 raw deflate 数据，以前一块末尾的 32K 内容作为字典以保持压缩率，
+ * 除最后一块外都以 SYNC_FLUSH 结束，因此各块的压缩结果按顺序拼接后就是一个完整的 deflate 流。
+ * 同时等待压缩的块数有上限，内存占用不随输入大小增长。输出的是标准 gzip 格式。
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+  private static final int BLOCK_SIZE = 128 * 1024;
+
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+
+  private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+  private final OutputStream out;
+
+  private final ExecutorService executor;
+
+  private final int level;
+
+  private final int maxPendingBlocks;
+
+  private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+  private final CRC32 crc = new CRC32();
+
+  private long totalLength;
+
+  private byte[] block = new byte[BLOCK_SIZE];
+
+  private int blockLength;
+
+  private byte[] dictionary;
+
+  private boolean closed;
+
+  /**
+   * @param out      输出流，关闭时一并关闭
+   * @param executor 执行压缩的线程池，由调用者负责关闭
+   * @param level    压缩级别
+   * @param threads  线程池的线程数，用于限制等待压缩的块数
+   */
+  public ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int level, int threads) throws IOException {
+    this.out = out;
+    this.executor = executor;
+    this.level = level;
+    this.maxPendingBlocks = Math.max(2, threads * 2);
+    out.write(HEADER);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    block[blockLength++] = (byte) b;
+    if (blockLength == BLOCK_SIZE) {
+      submitBlock(false);
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      int n = Math.min(len, BLOCK_SIZE - blockLength);
+      System.arraycopy(b, off, block, blockLength, n);
+      blockLength += n;
+      off += n;
+      len -= n;
+      if (blockLength == BLOCK_SIZE) {
+        submitBlock(false);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    try {
+      submitBlock(true);
+      while (!pendingBlocks.isEmpty()) {
+        writeFirstPendingBlock();
+      }
+      writeTrailer();
+    } finally {
+      pendingBlocks.forEach(f -> f.cancel(true));
+      out.close();
+    }
+  }
+
+  private void submitBlock(boolean last) throws IOException {
+    var data = block;
+    var length = blockLength;
+    var previousTail = dictionary;
+
+    crc.update(data, 0, length);
+    totalLength += length;
+
+    if (length >= DICTIONARY_SIZE) {
+      dictionary = Arrays.copyOfRange(data, length - DICTIONARY_SIZE, length);
+    } else if (length > 0) {
+      dictionary = concatTail(previousTail, data, length);
+    }
+
+    pendingBlocks.add(executor.submit(() -> compress(data, length, previousTail, last)));
+    block = new byte[BLOCK_SIZE];
+    blockLength = 0;
+
+    while (pendingBlocks.size() >= maxPendingBlocks) {
+      writeFirstPendingBlock();
+    }
+  }
+
+  private void writeFirstPendingBlock() throws IOException {
+    try {
+      out.write(pendingBlocks.removeFirst().get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Compression interrupted");
+    } catch (ExecutionException e) {
+      throw new IOException("Compression failed", e.getCause());
+    }
+  }
+
+  private byte[] compress(byte[] data, int length, byte[] dictionary, boolean last) {
+    var deflater = new Deflater(level, true);
+    try {
+      if (dictionary != null) {
+        deflater.setDictionary(dictionary);
+      }
+      deflater.setInput(data, 0, length);
+
+      var result = new ByteArrayOutputStream(length / 2 + 64);
+      var buffer = new byte[16 * 1024];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          int n = deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH);
+          result.write(buffer, 0, n);
+        }
+      } else {
+        int n;
+        do {
+          n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          result.write(buffer, 0, n);
+        } while (n == buffer.length);
+      }
+      return result.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void writeTrailer() throws IOException {
+    var value = crc.getValue();
+    var size = totalLength & 0xffffffffL;
+    out.write(new byte[]{
+      (byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24),
+      (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)
+    });
+  }
+
+  // 块长度不足字典大小时，用上一个字典的末尾补足
+  private static byte[] concatTail(byte[] previous, byte[] data, int length) {
+    var previousLength = previous == null ? 0 : Math.min(previous.length, DICTIONARY_SIZE - length);
+    var result = new byte[previousLength + length];
+    if (previousLength > 0) {
+      System.arraycopy(previous, previous.length - previousLength, result, 0, previousLength);
+    }
+    System.arraycopy(data, 0, result, previousLength, length);
+    return result;
+  }
+}
@@ -0,0 +1,178 @@
+package com.hyd.jsp.archive;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * 以 zip 条目为单位的二进制补丁，用于 jar、war 等 zip 格式的文件。
+ * <p>
+ * 新文件中每个条目的压缩数据如果与旧文件中同名条目的压缩数据完全相同，则记为“从旧文件复制”，
+ * 其他内容（条目头、目录、变化的条目）原样记入补丁。应用补丁得到的文件与新文件逐字节相同。
+ * <p>
+ * 补丁格式：
+ * <pre>
+ * int  MAGIC
+ * 重复：byte COPY, long 旧文件偏移, long 长度
+ *   或：byte LITERAL, long 长度, 字节内容
+ * byte END
+ * </pre>
+ */
+public class ZipPatch {
+
+  private static final int MAGIC = 0x4A535050;
+
+  private static final byte END = 0;
+
+  private static final byte COPY = 1;
+
+  private static final byte LITERAL = 2;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * 文件是否以 zip 条目开头。带有启动脚本前缀的可执行 jar 也会返回 false
+   */
+  public static boolean isZip(Path file) throws IOException {
+    try (var in = Files.newInputStream(file)) {
+      var header = in.readNBytes(4);
+      return header.length == 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4;
+    }
+  }
+
+  /**
+   * 生成补丁
+   *
+   * @return 补丁中直接记录的字节数
+   *
+   * @throws IOException 文件不是 zip 格式时也会抛出
+   */
+  public static long create(Path oldFile, Path newFile, OutputStream out) throws IOException {
+    try (var oldZip = new ZipFile(oldFile);
+         var newZip = new ZipFile(newFile);
+         var newChannel = FileChannel.open(newFile)) {
+
+      var oldEntries = new HashMap<String, ZipArchiveEntry>();
+      for (var entry : Collections.list(oldZip.getEntries())) {
+        oldEntries.put(entry.getName(), entry);
+      }
+
+      var data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+      data.writeInt(MAGIC);
+
+      long literalBytes = 0;
+      long position = 0;
+      for (var entry : Collections.list(newZip.getEntriesInPhysicalOrder())) {
+        var oldEntry = oldEntries.get(entry.getName());
+        if (oldEntry == null || !sameRawData(oldZip, oldEntry, newZip, entry)) {
+          continue;
+        }
+        if (entry.getDataOffset() < position) {
+          throw new IOException("Overlapping zip entries in " + newFile);
+        }
+        literalBytes += writeLiteral(data, newChannel, position, entry.getDataOffset() - position);
+        data.writeByte(COPY);
+        data.writeLong(oldEntry.getDataOffset());
+        data.writeLong(oldEntry.getCompressedSize());
+        position = entry.getDataOffset() + entry.getCompressedSize();
+      }
+      literalBytes += writeLiteral(data, newChannel, position, newChannel.size() - position);
+
+      data.writeByte(END);
+      data.flush();
+      return literalBytes;
+    }
+  }
+
+  /**
+   * 应用补丁
+   */
+  public static void apply(Path oldFile, InputStream patch, OutputStream out) throws IOException {
+    var data = new DataInputStream(new BufferedInputStream(patch, BUFFER_SIZE));
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Invalid patch");
+    }
+
+    var target = Channels.newChannel(out);
+    var buffer = new byte[BUFFER_SIZE];
+    try (var oldChannel = FileChannel.open(oldFile)) {
+      while (true) {
+        var op = data.readByte();
+        if (op == END) {
+          return;
+        } else if (op == COPY) {
+          var offset = data.readLong();
+          var length = data.readLong();
+          if (offset < 0 || offset + length > oldChannel.size()) {
+            throw new IOException("Patch does not match " + oldFile);
+          }
+          while (length > 0) {
+            var transferred = oldChannel.transferTo(offset, length, target);
+            offset += transferred;
+            length -= transferred;
+          }
+        } else if (op == LITERAL) {
+          var length = data.readLong();
+          while (length > 0) {
+            var read = data.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read < 0) {
+              throw new EOFException("Truncated patch");
+            }
+            out.write(buffer, 0, read);
+            length -= read;
+          }
+        } else {
+          throw new IOException("Invalid patch operation " + op);
+        }
+      }
+    }
+  }
+
+  private static long writeLiteral(DataOutputStream data, FileChannel channel, long position, long length) throws IOException {
+    if (length <= 0) {
+      return 0;
+    }
+    data.writeByte(LITERAL);
+    data.writeLong(length);
+    data.flush();
+    var remaining = length;
+    while (remaining > 0) {
+      var transferred = channel.transferTo(position, remaining, Channels.newChannel(data));
+      position += transferred;
+      remaining -= transferred;
+    }
+    return length;
+  }
+
+  private static boolean sameRawData(ZipFile oldZip, ZipArchiveEntry oldEntry, ZipFile newZip, ZipArchiveEntry newEntry) throws IOException {
+    if (oldEntry.getCrc() != newEntry.getCrc()
+      || oldEntry.getMethod() != newEntry.getMethod()
+      || oldEntry.getCompressedSize() != newEntry.getCompressedSize()) {
+      return false;
+    }
+
+    // 打开原始数据流时才会解析条目的数据偏移
+    try (var oldIn = oldZip.getRawInputStream(oldEntry); var newIn = newZip.getRawInputStream(newEntry)) {
+      var oldBuffer = new byte[BUFFER_SIZE];
+      var newBuffer = new byte[BUFFER_SIZE];
+      while (true) {
+        var oldRead = oldIn.readNBytes(oldBuffer, 0, oldBuffer.length);
+        var newRead = newIn.readNBytes(newBuffer, 0, newBuffer.length);
+        if (Arrays.mismatch(oldBuffer, 0, oldRead, newBuffer, 0, newRead) >= 0) {
+          return false;
+        }
+        if (oldRead < oldBuffer.length) {
+          return true;
+        }
+      }
+    }
+  }
+}
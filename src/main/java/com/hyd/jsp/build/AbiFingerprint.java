@@ -0,0 +1,226 @@
+package com.hyd.jsp.build;
+
+import com.hyd.jsp.utils.Hashes;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.asm.*;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * 计算编译结果的 ABI 摘要：类、非 private 的字段和方法的签名、常量值、注解及其属性值。
+ * 方法体等实现细节变化时摘要不变，依赖此模块的模块不需要重新编译。
+ * <p>
+ * class 文件的版本比 ASM 支持的更新时无法解析，ABI 未知，每次编译都返回不同的摘要，依赖此模块的模块总是重新编译。
+ */
+@Slf4j
+public class AbiFingerprint {
+
+  private static final String UNKNOWN_PREFIX = "unknown-";
+
+  /**
+   * 计算目录下所有 class 文件的 ABI 摘要
+   *
+   * @param classesDir 编译结果目录
+   *
+   * @return 摘要，目录不存在时返回空字符串，无法解析时返回以 unknown- 开头的随机值
+   */
+  public static String compute(Path classesDir) throws IOException {
+    if (!Files.isDirectory(classesDir)) {
+      return "";
+    }
+
+    List<Path> classFiles;
+    try (var files = Files.walk(classesDir)) {
+      classFiles = files.filter(f -> f.toString().endsWith(".class") && Files.isRegularFile(f)).collect(Collectors.toList());
+    }
+
+    var signatures = new TreeMap<String, String>();
+    for (var classFile : classFiles) {
+      var visitor = new SignatureVisitor();
+      try {
+        new ClassReader(Files.readAllBytes(classFile)).accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+      } catch (IllegalArgumentException e) {
+        // ASM 不支持的 class 文件版本
+        log.warn("Unable to read {}, ABI of {} is unknown: {}", classFile, classesDir, e.toString());
+        return UNKNOWN_PREFIX + UUID.randomUUID();
+      }
+      if (visitor.name != null) {
+        signatures.put(visitor.name, visitor.signature());
+      }
+    }
+
+    var digest = Hashes.sha256();
+    signatures.values().forEach(s -> digest.update(s.getBytes(StandardCharsets.UTF_8)));
+    return Hashes.toHex(digest.digest());
+  }
+
+  private static class SignatureVisitor extends ClassVisitor {
+
+    private String name;
+
+    private final List<String> members = new ArrayList<>();
+
+    private final StringBuilder header = new StringBuilder();
+
+    private SignatureVisitor() {
+      super(Opcodes.ASM9);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+      if ((access & Opcodes.ACC_SYNTHETIC) != 0) {
+        return;
+      }
+      this.name = name;
+      header.append("class ").append(access).append(' ').append(name).append(' ').append(signature)
+        .append(" extends ").append(superName).append(" implements ").append(String.join(",", interfaces)).append('\n');
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+      header.append("@").append(descriptor);
+      return new AnnotationSignature(header, () -> header.append('\n'));
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+      header.append("inner ").append(access).append(' ').append(name).append('\n');
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+      if ((access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_SYNTHETIC)) != 0) {
+        return null;
+      }
+      // 常量会被编译到使用它的类中，所以常量值也属于 ABI
+      var member = new StringBuilder("field ").append(access).append(' ').append(name).append(' ')
+        .append(descriptor).append(' ').append(signature).append(" = ").append(value);
+      var index = members.size();
+      members.add(member.toString());
+      return new FieldVisitor(Opcodes.ASM9) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible) {
+          member.append(" @").append(annotationDescriptor);
+          return new AnnotationSignature(member, () -> members.set(index, member.toString()));
+        }
+      };
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+      if ((access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_SYNTHETIC)) != 0) {
+        return null;
+      }
+      var member = new StringBuilder("method ").append(access).append(' ').append(name).append(descriptor)
+        .append(' ').append(signature).append(" throws ").append(exceptions == null ? "" : String.join(",", exceptions));
+      var index = members.size();
+      members.add(member.toString());
+      return new MethodVisitor(Opcodes.ASM9) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible) {
+          member.append(" @").append(annotationDescriptor);
+          return new AnnotationSignature(member, () -> members.set(index, member.toString()));
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String annotationDescriptor, boolean visible) {
+          member.append(" @").append(parameter).append(':').append(annotationDescriptor);
+          return new AnnotationSignature(member, () -> members.set(index, member.toString()));
+        }
+
+        // 注解属性的默认值
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+          member.append(" default");
+          return new AnnotationSignature(member, () -> members.set(index, member.toString()));
+        }
+      };
+    }
+
+    private String signature() {
+      members.sort(null);
+      return header + String.join("\n", members) + "\n";
+    }
+  }
+  /**
+   * 将注解的属性值追加到签名中，形如 (name=value,...)，数组形如 [value,...]。结束时执行 onEnd
+   */
+  private static class AnnotationSignature extends AnnotationVisitor {
+
+    private final StringBuilder target;
+
+    private final char close;
+
+    private final Runnable onEnd;
+
+    private AnnotationSignature(StringBuilder target, Runnable onEnd) {
+      this(target, '(', ')', onEnd);
+    }
+
+    private AnnotationSignature(StringBuilder target, char open, char close, Runnable onEnd) {
+      super(Opcodes.ASM9);
+      this.target = target;
+      this.close = close;
+      this.onEnd = onEnd;
+      target.append(open);
+    }
+
+    @Override
+    public void visit(String name, Object value) {
+      appendName(name);
+      // 基本类型的数组直接作为值
+      if (value.getClass().isArray()) {
+        target.append('[');
+        for (var i = 0; i < Array.getLength(value); i++) {
+          target.append(Array.get(value, i)).append(',');
+        }
+        target.append(']');
+      } else if (value instanceof String) {
+        target.append('"').append(value).append('"');
+      } else {
+        target.append(value);
+      }
+      target.append(',');
+    }
+
+    @Override
+    public void visitEnum(String name, String descriptor, String value) {
+      appendName(name);
+      target.append(descriptor).append('.').append(value).append(',');
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+      appendName(name);
+      target.append('@').append(descriptor);
+      return new AnnotationSignature(target, () -> target.append(','));
+    }
+
+    @Override
+    public AnnotationVisitor visitArray(String name) {
+      appendName(name);
+      return new AnnotationSignature(target, '[', ']', () -> target.append(','));
+    }
+
+    @Override
+    public void visitEnd() {
+      target.append(close);
+      onEnd.run();
+    }
+
+    private void appendName(String name) {
+      if (name != null) {
+        target.append(name).append('=');
+      }
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package com.hyd.jsp.build;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.utils.Commands;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 将 Maven 命令改为由 mvnd 守护进程执行。
+ * <p>
+ * mvnd 守护进程在构建之间保持运行，缓存已加载的插件类加载器和 JIT 编译结果。
+ * 每个项目使用单独的守护进程存储目录（mvnd.daemonStorage），所以不同项目不会共用守护进程，
+ * 同一项目的后续构建会复用上次的守护进程。
+ * <p>
+ * 守护进程空闲 {@link JavaServicePackagerConfig#getMvndIdleTimeoutMinutes()} 分钟后自行退出；
+ * 保留守护进程的项目数超过 {@link JavaServicePackagerConfig#getMvndMaxDaemons()} 时，
+ * 停止最久未使用且没有在构建的项目的守护进程；服务关闭时停止所有守护进程。
+ * 用 mvnw 构建且 Wrapper 指定了 Maven 版本的项目不使用 mvnd，以免换用其他版本的 Maven。
+ */
+@Component
+@Slf4j
+public class MavenDaemon {
+
+  private static final Set<String> MAVEN_COMMANDS = Set.of("mvn", "mvn.cmd", "mvnw", "mvnw.cmd");
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  private volatile Boolean available;
+
+  // 使用守护进程的项目 -> 正在执行的构建数，按最近使用的顺序排列
+  private final LinkedHashMap<String, Integer> projects = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * 转换构建命令。返回非 null 时，构建结束后必须调用 {@link #release(String)}
+   *
+   * @return mvnd 命令，mvnd 不可用、原命令不是 mvn 或 Wrapper 指定了 Maven 版本时返回 null
+   */
+  public List<String> toDaemonCommand(String project, List<String> command, Path sourceDir) throws IOException {
+    if (!isMavenCommand(command) || !isAvailable()) {
+      return null;
+    }
+    if (MavenWrapper.isWrapperCommand(command) && MavenWrapper.distributionUrl(sourceDir) != null) {
+      log.info("Project {} pins its Maven version with mvnw, not using mvnd", project);
+      return null;
+    }
+
+    var daemonCommand = new ArrayList<String>(command.size() + 2);
+    daemonCommand.add(config.getMvndExecutable());
+    daemonCommand.add("-Dmvnd.daemonStorage=" + daemonStorage(project));
+    daemonCommand.add("-Dmvnd.idleTimeout=" + config.getMvndIdleTimeoutMinutes() + "m");
+    daemonCommand.addAll(command.subList(1, command.size()));
+    acquire(project);
+    return daemonCommand;
+  }
+
+  /**
+   * 项目使用守护进程的构建已结束
+   */
+  public void release(String project) {
+    synchronized (projects) {
+      projects.computeIfPresent(project, (p, count) -> count - 1);
+    }
+  }
+
+  private void acquire(String project) {
+    var evicted = new ArrayList<String>();
+    synchronized (projects) {
+      projects.merge(project, 1, Integer::sum);
+      var iterator = projects.entrySet().iterator();
+      var excess = projects.size() - Math.max(1, config.getMvndMaxDaemons());
+      while (excess > 0 && iterator.hasNext()) {
+        var entry = iterator.next();
+        if (entry.getValue() <= 0) {
+          iterator.remove();
+          evicted.add(entry.getKey());
+          excess--;
+        }
+      }
+    }
+    for (var evictedProject : evicted) {
+      stop(daemonStorage(evictedProject));
+    }
+  }
+
+  @PreDestroy
+  private void shutdown() throws IOException {
+    if (!isAvailable()) {
+      return;
+    }
+    var storageRoot = config.workPath("mvnd");
+    if (!Files.isDirectory(storageRoot)) {
+      return;
+    }
+    try (var dirs = Files.list(storageRoot)) {
+      dirs.filter(Files::isDirectory).map(Path::toAbsolutePath).forEach(this::stop);
+    }
+  }
+
+  private void stop(Path storage) {
+    if (!Files.isDirectory(storage)) {
+      return;
+    }
+    try {
+      Commands.output(List.of(config.getMvndExecutable(), "-Dmvnd.daemonStorage=" + storage, "--stop"), storage);
+      log.info("Stopped mvnd daemons in {}", storage);
+    } catch (IOException e) {
+      log.warn("Failed to stop mvnd daemons in " + storage, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private Path daemonStorage(String project) {
+    return config.workPath("mvnd", project).toAbsolutePath();
+  }
+
+  /**
+   * 构建命令是否为 mvn 或 mvnw
+   */
+  public static boolean isMavenCommand(List<String> command) {
+    return !command.isEmpty() && MAVEN_COMMANDS.contains(Path.of(command.get(0)).getFileName().toString());
+  }
+
+  /**
+   * mvnd 是否可用，只检查一次
+   */
+  public boolean isAvailable() {
+    if (available == null) {
+      available = findExecutable(config.getMvndExecutable());
+      if (!available) {
+        log.warn("{} not found, DAEMON builds fall back to COLD", config.getMvndExecutable());
+      }
+    }
+    return available;
+  }
+
+  private static boolean findExecutable(String executable) {
+    if (executable.contains("/") || executable.contains(File.separator)) {
+      return Files.isExecutable(Path.of(executable));
+    }
+    var path = Objects.requireNonNullElse(System.getenv("PATH"), "");
+    for (var dir : path.split(File.pathSeparator)) {
+      if (!dir.isEmpty() && Files.isExecutable(Path.of(dir, executable))) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,405 @@
+package com.hyd.jsp.build;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.metrics.PackagerMetrics;
+import com.hyd.jsp.utils.Commands;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 工作目录下的 Maven 本地仓库（m2）。
+ * <ul>
+ *   <li>Maven 3.9 起所有构建任务共用一个本地仓库，Maven resolver 按构件加文件锁（file-lock + file-gav），
+ *   多个任务可以同时下载依赖。仓库按来源分开存放，下载的构件在 cached 目录下，install 的构件在 installed 目录
+ *   或任务单独的目录下</li>
+ *   <li>更早的版本不支持这些锁，每个项目使用单独的本地仓库，同一项目的任务依次执行，不会同时使用</li>
+ *   <li>开启 mavenDependencyPrewarm 时，构建成功后单独执行一次 dependency:tree 记录解析到的依赖，
+ *   下次构建时与构建同时下载本地仓库中缺少的部分</li>
+ *   <li>配置了 mirrorDirectory 时，所有远程仓库都指向该目录，构建不访问网络</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class MavenRepository {
+
+  private static final String LOCAL_REPOSITORY_PROPERTY = "-Dmaven.repo.local=";
+
+  private static final String REPOSITORY_TAIL_PROPERTY = "-Dmaven.repo.local.tail=";
+
+  private static final String SPLIT_REPOSITORY_ARG = "-Daether.enhancedLocalRepository.split=true";
+
+  // 共用本地仓库中下载的构件和各任务 install 的构件所在的目录
+  private static final String CACHED_PREFIX = "cached";
+
+  private static final String JOBS_PREFIX = "jobs";
+
+  static final String DEPENDENCY_PLUGIN = "org.apache.maven.plugins:maven-dependency-plugin:3.6.1";
+
+  // dependency:tree 输出中的依赖：groupId:artifactId:type[:classifier]:version:scope，各模块自身的行没有 scope
+  private static final Pattern DEPENDENCY_PATTERN = Pattern.compile(
+    "^[|+\\\\\\- ]*([^:\\s]+):([^:\\s]+):([^:\\s]+)(?::([^:\\s]+))?:([^:\\s]+):(compile|provided|runtime|test|system|import)\\b.*$");
+
+  private static final AtomicInteger PREWARM_THREAD_COUNTER = new AtomicInteger();
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  @Autowired
+  private MavenVersion mavenVersion;
+
+  @Autowired
+  private PackagerMetrics metrics;
+
+  @PostConstruct
+  private void init() throws IOException {
+    if (StringUtils.isNotBlank(config.getMavenMirrorDirectory())) {
+      var mirrorUrl = Path.of(config.getMavenMirrorDirectory()).toAbsolutePath().toUri();
+      Files.createDirectories(settingsFile().getParent());
+      Files.writeString(settingsFile(), "<settings>\n"
+        + "  <mirrors>\n"
+        + "    <mirror>\n"
+        + "      <id>jsp-local-mirror</id>\n"
+        + "      <mirrorOf>*</mirrorOf>\n"
+        + "      <url>" + mirrorUrl + "</url>\n"
+        + "    </mirror>\n"
+        + "  </mirrors>\n"
+        + "</settings>\n");
+      log.info("Maven repositories are mirrored to {}", mirrorUrl);
+    }
+  }
+
+  /**
+   * 在 Maven 命令中加入本地仓库、文件锁、离线镜像的参数。其他命令原样返回。
+   * 使用工作目录下的本地仓库时，原来的本地仓库（命令中指定的或 ~/.m2/repository）作为只读的后备仓库
+   *
+   * @param project   项目名称
+   * @param command   项目的构建命令。转换为 mvnd 命令之前调用，按 mvn 或 mvnw 的版本确定参数（mvnd 1.x 内置 Maven 3.9）
+   * @param sourceDir 源码目录，用于确定 Maven 版本
+   */
+  public List<String> toBuildCommand(String project, List<String> command, Path sourceDir) throws InterruptedException {
+    if (!MavenDaemon.isMavenCommand(command)) {
+      return command;
+    }
+
+    var result = new ArrayList<String>(command.size() + 4);
+    result.add(command.get(0));
+    var args = repositoryArgs(project, command, sourceDir);
+    result.addAll(args);
+    for (var arg : command.subList(1, command.size())) {
+      // 命令中原有的本地仓库已作为后备仓库
+      if (!(config.isMavenRepositoryShared() && isRepositoryArg(arg))) {
+        result.add(arg);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 让 Maven 命令 install 的构件写入任务单独的位置，不会覆盖其他任务 install 的同名构件，需要 Maven 3.9。
+   * <ul>
+   *   <li>共用本地仓库时，本地仓库按来源分开存放（aether.enhancedLocalRepository.split），
+   *   下载的构件仍在共用的 cached 目录下，install 的构件在 jobs/{任务 ID} 目录下</li>
+   *   <li>否则使用任务单独的本地仓库，原来的本地仓库及其后备仓库作为只读的后备仓库（maven.repo.local.tail）</li>
+   * </ul>
+   *
+   * @param command 已经过 {@link #toBuildCommand} 转换的 Maven 命令
+   * @param jobId   任务 ID
+   */
+  public List<String> withJobRepository(List<String> command, String jobId) {
+    if (command.contains(SPLIT_REPOSITORY_ARG)) {
+      var result = new ArrayList<>(command);
+      result.add(1, "-Daether.enhancedLocalRepository.localPrefix=" + JOBS_PREFIX + "/" + jobId);
+      return result;
+    }
+
+    var result = new ArrayList<String>(command.size() + 2);
+    for (var arg : command) {
+      if (!isRepositoryArg(arg)) {
+        result.add(arg);
+      }
+    }
+    result.add(1, LOCAL_REPOSITORY_PROPERTY + jobRepository(command, jobId));
+    result.add(2, repositoryTailArg(command));
+    return result;
+  }
+
+  /**
+   * {@link #withJobRepository} 中任务 install 的构件所在的目录，由调用方在任务结束后删除
+   */
+  public Path jobRepository(List<String> command, String jobId) {
+    return command.contains(SPLIT_REPOSITORY_ARG)
+      ? sharedRepository().resolve(JOBS_PREFIX).resolve(jobId)
+      : config.workPath("m2", "jobs", jobId).toAbsolutePath().normalize();
+  }
+
+  /**
+   * 构建成功后记录解析到的依赖，供下次构建预先下载。只在开启 mavenDependencyPrewarm 且共用本地仓库时执行。
+   * 依赖由单独的 dependency:tree 命令列出（只需要 pom，不需要上游模块已 install），
+   * SNAPSHOT 版本的依赖和本项目的模块不记录
+   *
+   * @param project   项目名称
+   * @param command   项目的构建命令，用于确定 Maven 可执行文件
+   * @param sourceDir 源码目录
+   * @param logFile   日志文件，命令结束后输出追加到其中
+   */
+  public void recordDependencies(String project, List<String> command, Path sourceDir, Path logFile) throws IOException, InterruptedException {
+    if (!config.isMavenDependencyPrewarm() || !MavenDaemon.isMavenCommand(command)
+      || !isSharedRepository(project, command, sourceDir)) {
+      return;
+    }
+
+    var treeFile = dependencyFile(project).resolveSibling(project + ".tree");
+    Files.createDirectories(treeFile.getParent());
+    Files.deleteIfExists(treeFile);
+
+    var listCommand = new ArrayList<String>();
+    listCommand.add(command.get(0));
+    listCommand.addAll(repositoryArgs(project, command, sourceDir));
+    listCommand.addAll(List.of("-B", DEPENDENCY_PLUGIN + ":tree",
+      "-DoutputFile=" + treeFile.toAbsolutePath(), "-DappendOutput=true"));
+
+    var moduleIds = new HashSet<String>();
+    for (var module : ModuleGraph.parse(sourceDir).getModules()) {
+      moduleIds.add(module.getId());
+    }
+
+    var recordLogFile = logFile.resolveSibling(logFile.getFileName() + ".dependencies");
+    var dependencies = new TreeSet<String>();
+    try {
+      Commands.run(listCommand, sourceDir, recordLogFile);
+      for (var line : Files.readAllLines(treeFile)) {
+        var matcher = DEPENDENCY_PATTERN.matcher(line);
+        if (matcher.matches() && !matcher.group(5).endsWith("-SNAPSHOT")
+          && !moduleIds.contains(matcher.group(1) + ":" + matcher.group(2))) {
+          var classifier = matcher.group(4) == null ? "" : matcher.group(4);
+          dependencies.add(String.join(":", matcher.group(1), matcher.group(2), matcher.group(5), matcher.group(3), classifier));
+        }
+      }
+    } catch (IOException e) {
+      // 记录失败不影响构建结果
+      log.warn("Failed to record dependencies of project {}: {}", project, e.getMessage());
+      return;
+    } finally {
+      Files.deleteIfExists(treeFile);
+      Commands.appendLog(recordLogFile, logFile, "record dependencies");
+    }
+
+    if (!dependencies.isEmpty()) {
+      Files.write(dependencyFile(project), dependencies);
+    }
+  }
+
+  /**
+   * 如果本地仓库缺少上次构建记录的依赖，则在后台用项目自身的 Maven 可执行文件（包括 mvnw）下载，与构建同时进行。
+   * 下载与构建共用本地仓库，依靠文件锁避免冲突，所以只在共用本地仓库（Maven 3.9 起）时执行
+   *
+   * @param project   项目名称
+   * @param command   项目的构建命令，用于确定 Maven 可执行文件
+   * @param sourceDir 源码目录
+   * @param logFile   日志文件，下载结束后输出追加到其中
+   *
+   * @return 下载任务，构建结束后必须关闭
+   */
+  public Prewarm prewarm(String project, List<String> command, Path sourceDir, Path logFile) throws IOException, InterruptedException {
+    if (!config.isMavenDependencyPrewarm() || !MavenDaemon.isMavenCommand(command)
+      || !Files.exists(dependencyFile(project)) || !isSharedRepository(project, command, sourceDir)) {
+      return Prewarm.NONE;
+    }
+
+    var repository = sharedRepository().resolve(CACHED_PREFIX);
+    var missing = new ArrayList<String[]>();
+    for (var line : Files.readAllLines(dependencyFile(project))) {
+      var parts = line.split(":", -1);
+      if (parts.length == 5 && !Files.exists(artifactFile(repository, parts))) {
+        missing.add(parts);
+      }
+    }
+    if (missing.isEmpty()) {
+      return Prewarm.NONE;
+    }
+
+    var prewarmCommand = new ArrayList<String>();
+    prewarmCommand.add(command.get(0));
+    prewarmCommand.addAll(repositoryArgs(project, command, sourceDir));
+    var thread = new Thread(() -> {
+      try {
+        prewarm(project, prewarmCommand, missing, sourceDir, logFile);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        log.warn("Failed to prewarm dependencies of project {}", project, e);
+      }
+    }, "maven-prewarm-" + PREWARM_THREAD_COUNTER.incrementAndGet());
+    thread.setDaemon(true);
+    thread.start();
+    return new Prewarm(thread);
+  }
+
+  private void prewarm(
+    String project, List<String> command, List<String[]> missing, Path sourceDir, Path logFile
+  ) throws IOException, InterruptedException {
+
+    // 缺少的依赖写入临时的 pom，由一个 Maven 进程并行下载
+    var pom = new StringBuilder("<project>\n  <modelVersion>4.0.0</modelVersion>\n"
+      + "  <groupId>jsp.prewarm</groupId>\n  <artifactId>" + project + "</artifactId>\n  <version>0</version>\n"
+      + "  <packaging>pom</packaging>\n  <dependencies>\n");
+    for (var parts : missing) {
+      pom.append("    <dependency><groupId>").append(parts[0]).append("</groupId><artifactId>").append(parts[1])
+        .append("</artifactId><version>").append(parts[2]).append("</version><type>").append(parts[3]).append("</type>");
+      if (!parts[4].isEmpty()) {
+        pom.append("<classifier>").append(parts[4]).append("</classifier>");
+      }
+      pom.append("</dependency>\n");
+    }
+    pom.append("  </dependencies>\n</project>\n");
+
+    var pomFile = config.workPath("m2-prewarm", project + "-pom.xml");
+    Files.createDirectories(pomFile.getParent());
+    Files.writeString(pomFile, pom);
+
+    var prewarmCommand = new ArrayList<>(command);
+    prewarmCommand.addAll(List.of("-B", "-f", pomFile.toAbsolutePath().toString(),
+      DEPENDENCY_PLUGIN + ":resolve", "-DexcludeTransitive=true"));
+
+    var start = System.currentTimeMillis();
+    var startNanos = System.nanoTime();
+    var prewarmLogFile = logFile.resolveSibling(logFile.getFileName() + ".prewarm");
+    try {
+      // 在源码目录中执行，mvnw 才能找到 .mvn/wrapper 配置
+      Commands.run(prewarmCommand, sourceDir, prewarmLogFile);
+      metrics.recordPhase(PackagerMetrics.PHASE_PREWARM, project, startNanos);
+      log.info("{} dependencies of project {} prewarmed in {} ms", missing.size(), project, System.currentTimeMillis() - start);
+    } finally {
+      Commands.appendLog(prewarmLogFile, logFile, "prewarm dependencies");
+    }
+  }
+
+  private List<String> repositoryArgs(String project, List<String> command, Path sourceDir) throws InterruptedException {
+    var args = new ArrayList<String>();
+    if (config.isMavenRepositoryShared()) {
+      if (isSharedRepository(project, command, sourceDir)) {
+        args.add(LOCAL_REPOSITORY_PROPERTY + sharedRepository());
+        args.add("-Daether.syncContext.named.factory=file-lock");
+        args.add("-Daether.syncContext.named.nameMapper=file-gav");
+        args.add(SPLIT_REPOSITORY_ARG);
+        args.add("-Daether.enhancedLocalRepository.remotePrefix=" + CACHED_PREFIX);
+      } else {
+        args.add(LOCAL_REPOSITORY_PROPERTY + config.workPath("m2", "projects", project).toAbsolutePath());
+      }
+      // maven.repo.local.tail 从 Maven 3.9 起支持，更早的版本忽略此参数
+      args.add(repositoryTailArg(command));
+    }
+    if (StringUtils.isNotBlank(config.getMavenMirrorDirectory())) {
+      args.add("-s");
+      args.add(settingsFile().toAbsolutePath().toString());
+    }
+    return args;
+  }
+
+  /**
+   * 命令是否使用所有任务共用的本地仓库。aether.syncContext.named.* 从 Maven 3.9 起才生效，
+   * 更早的版本或无法确定版本时使用项目单独的仓库
+   */
+  private boolean isSharedRepository(String project, List<String> command, Path sourceDir) throws InterruptedException {
+    if (!config.isMavenRepositoryShared()) {
+      return false;
+    }
+    if (mavenVersion.isAtLeast(command, sourceDir, 3, 9)) {
+      return true;
+    }
+    log.debug("Project {} uses its own Maven repository, {} does not support named locks", project, command.get(0));
+    return false;
+  }
+
+  private static boolean isRepositoryArg(String arg) {
+    return arg.startsWith(LOCAL_REPOSITORY_PROPERTY) || arg.startsWith(REPOSITORY_TAIL_PROPERTY);
+  }
+
+  /**
+   * 命令原来使用的本地仓库（没有指定时为 ~/.m2/repository）及其后备仓库，依次作为新本地仓库的后备仓库
+   */
+  private static String repositoryTailArg(List<String> command) {
+    var localRepository = Path.of(System.getProperty("user.home"), ".m2", "repository").toString();
+    String tail = null;
+    for (var arg : command) {
+      if (arg.startsWith(LOCAL_REPOSITORY_PROPERTY)) {
+        localRepository = arg.substring(LOCAL_REPOSITORY_PROPERTY.length());
+      } else if (arg.startsWith(REPOSITORY_TAIL_PROPERTY)) {
+        tail = arg.substring(REPOSITORY_TAIL_PROPERTY.length());
+      }
+    }
+    return REPOSITORY_TAIL_PROPERTY + (tail == null ? localRepository : localRepository + "," + tail);
+  }
+
+  private Path sharedRepository() {
+    return config.workPath("m2", "repository").toAbsolutePath();
+  }
+
+  private Path settingsFile() {
+    return config.workPath("m2", "settings.xml");
+  }
+
+  private Path dependencyFile(String project) {
+    return config.workPath("m2", "dependencies", project + ".txt");
+  }
+
+  /**
+   * 构件在本地仓库中的文件，parts 为 groupId, artifactId, version, type, classifier
+   */
+  private static Path artifactFile(Path repository, String[] parts) {
+    var type = parts[3];
+    var classifier = parts[4];
+    var extension = Set.of("pom", "war", "ear", "zip").contains(type) ? type : "jar";
+    if (type.equals("test-jar") && classifier.isEmpty()) {
+      classifier = "tests";
+    }
+    var fileName = parts[1] + "-" + parts[2] + (classifier.isEmpty() ? "" : "-" + classifier) + "." + extension;
+    return repository.resolve(parts[0].replace('.', '/')).resolve(parts[1]).resolve(parts[2]).resolve(fileName);
+  }
+
+  /**
+   * 后台下载依赖的任务
+   */
+  public static class Prewarm implements AutoCloseable {
+
+    private static final Prewarm NONE = new Prewarm(null);
+
+    private final Thread thread;
+
+    private Prewarm(Thread thread) {
+      this.thread = thread;
+    }
+
+    /**
+     * 中止尚未结束的下载，等到下载进程退出、输出已追加到日志后才返回，之后日志文件不会再被修改
+     */
+    @Override
+    public void close() {
+      if (thread == null) {
+        return;
+      }
+      thread.interrupt();
+      var interrupted = false;
+      while (thread.isAlive()) {
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package com.hyd.jsp.build;
+
+import com.hyd.jsp.utils.Commands;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 确定构建命令使用的 Maven 版本。
+ * <p>
+ * mvnw 以 Wrapper 配置中的发行包版本为准；其他命令执行一次 "-v" 并按可执行文件缓存结果
+ * （mvnd 的输出中也包含内置的 Maven 版本）。
+ * "-v" 的输出中同时有 Maven 使用的 JDK 版本；mvnw 不执行 "-v"，按 JAVA_HOME 或运行本程序的 JDK 确定。
+ */
+@Component
+@Slf4j
+public class MavenVersion {
+
+  // mvnd -v 的输出中先有 "Apache Maven Daemon (mvnd) ..."，不会与此匹配
+  private static final Pattern VERSION_OUTPUT = Pattern.compile("Apache Maven (\\d+(?:\\.\\d+)*)");
+
+  private static final Pattern JAVA_VERSION_OUTPUT = Pattern.compile("Java version: ([^,\\s]+)");
+
+  private static final Pattern RELEASE_JAVA_VERSION = Pattern.compile("(?m)^JAVA_VERSION=\"?([^\"\\s]+)");
+
+  private static final Pattern VERSION_NUMBER = Pattern.compile("(\\d+)\\.(\\d+)");
+
+  private final Map<String, Optional<String>> versions = new ConcurrentHashMap<>();
+
+  private final Map<String, Optional<String>> javaVersions = new ConcurrentHashMap<>();
+
+  /**
+   * 构建命令使用的 Maven 版本
+   *
+   * @param command   Maven 构建命令
+   * @param sourceDir 源码目录，即执行命令的目录
+   *
+   * @return 版本号，无法确定时返回 null
+   */
+  public String detect(List<String> command, Path sourceDir) throws InterruptedException {
+    if (command.isEmpty()) {
+      return null;
+    }
+    if (MavenWrapper.isWrapperCommand(command)) {
+      try {
+        var version = MavenWrapper.version(MavenWrapper.distributionUrl(sourceDir));
+        if (version != null) {
+          return version;
+        }
+      } catch (IOException e) {
+        log.warn("Failed to read Maven wrapper properties in " + sourceDir, e);
+      }
+    }
+
+    var key = executableKey(command, sourceDir);
+    readVersionsIfAbsent(key, command.get(0), sourceDir);
+    return versions.get(key).orElse(null);
+  }
+
+  /**
+   * 构建命令使用的 JDK 版本
+   *
+   * @return 版本号，无法确定时返回 null
+   */
+  public String detectJava(List<String> command, Path sourceDir) throws InterruptedException {
+    if (command.isEmpty() || MavenWrapper.isWrapperCommand(command)) {
+      return defaultJavaVersion();
+    }
+    var key = executableKey(command, sourceDir);
+    readVersionsIfAbsent(key, command.get(0), sourceDir);
+    return javaVersions.get(key).orElseGet(MavenVersion::defaultJavaVersion);
+  }
+
+  private static String executableKey(List<String> command, Path sourceDir) {
+    var executable = command.get(0);
+    return executable.contains("/") || executable.contains("\\")
+      ? sourceDir.resolve(executable).toAbsolutePath().normalize().toString() : executable;
+  }
+
+  private void readVersionsIfAbsent(String key, String executable, Path sourceDir) throws InterruptedException {
+    if (versions.containsKey(key)) {
+      return;
+    }
+    var output = readVersionOutput(executable, sourceDir);
+    javaVersions.put(key, find(JAVA_VERSION_OUTPUT, output));
+    versions.put(key, find(VERSION_OUTPUT, output));
+  }
+
+  /**
+   * Maven 使用 JAVA_HOME 指定的 JDK，没有指定时一般与运行本程序的 JDK 相同
+   */
+  private static String defaultJavaVersion() {
+    var javaHome = System.getenv("JAVA_HOME");
+    if (javaHome != null) {
+      try {
+        var version = find(RELEASE_JAVA_VERSION, Files.readString(Path.of(javaHome, "release")));
+        if (version.isPresent()) {
+          return version.get();
+        }
+      } catch (IOException | InvalidPathException e) {
+        log.debug("Failed to read JDK version in {}: {}", javaHome, e.toString());
+      }
+    }
+    return System.getProperty("java.version");
+  }
+
+  private static Optional<String> find(Pattern pattern, String text) {
+    if (text == null) {
+      return Optional.empty();
+    }
+    var matcher = pattern.matcher(text);
+    return matcher.find() ? Optional.of(matcher.group(1)) : Optional.empty();
+  }
+
+  /**
+   * 构建命令使用的 Maven 版本是否不低于指定版本，无法确定版本时返回 false
+   */
+  public boolean isAtLeast(List<String> command, Path sourceDir, int major, int minor) throws InterruptedException {
+    return isAtLeast(detect(command, sourceDir), major, minor);
+  }
+
+  static boolean isAtLeast(String version, int major, int minor) {
+    if (version == null) {
+      return false;
+    }
+    var matcher = VERSION_NUMBER.matcher(version);
+    if (!matcher.lookingAt()) {
+      return false;
+    }
+    var actualMajor = Integer.parseInt(matcher.group(1));
+    return actualMajor > major || actualMajor == major && Integer.parseInt(matcher.group(2)) >= minor;
+  }
+
+  private static String readVersionOutput(String executable, Path sourceDir) throws InterruptedException {
+    try {
+      return Commands.output(List.of(executable, "-v"), sourceDir);
+    } catch (IOException e) {
+      log.warn("Failed to detect Maven version of {}: {}", executable, e.getMessage());
+      return null;
+    }
+  }
+}
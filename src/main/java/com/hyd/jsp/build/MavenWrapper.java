@@ -0,0 +1,65 @@
+package com.hyd.jsp.build;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 读取项目中 Maven Wrapper（mvnw）的配置
+ */
+final class MavenWrapper {
+
+  private static final Set<String> WRAPPER_COMMANDS = Set.of("mvnw", "mvnw.cmd");
+
+  private static final Path PROPERTIES_FILE = Path.of(".mvn", "wrapper", "maven-wrapper.properties");
+
+  // 如 .../apache-maven/3.9.6/apache-maven-3.9.6-bin.zip
+  private static final Pattern DISTRIBUTION_VERSION = Pattern.compile("apache-maven-([0-9][^/]*?)-bin\\.(zip|tar\\.gz)$");
+
+  private MavenWrapper() {
+  }
+
+  /**
+   * 构建命令是否为 mvnw
+   */
+  static boolean isWrapperCommand(List<String> command) {
+    return !command.isEmpty() && WRAPPER_COMMANDS.contains(Path.of(command.get(0)).getFileName().toString());
+  }
+
+  /**
+   * 读取 Wrapper 指定的 Maven 发行包地址
+   *
+   * @return 发行包地址，项目没有 Wrapper 配置时返回 null
+   */
+  static String distributionUrl(Path sourceDir) throws IOException {
+    var propertiesFile = sourceDir.resolve(PROPERTIES_FILE);
+    if (!Files.isRegularFile(propertiesFile)) {
+      return null;
+    }
+    var properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(propertiesFile)) {
+      properties.load(reader);
+    }
+    return StringUtils.trimToNull(properties.getProperty("distributionUrl"));
+  }
+
+  /**
+   * 从发行包地址中解析 Maven 版本号
+   *
+   * @return 版本号，无法识别时返回 null
+   */
+  static String version(String distributionUrl) {
+    if (distributionUrl == null) {
+      return null;
+    }
+    var matcher = DISTRIBUTION_VERSION.matcher(distributionUrl);
+    return matcher.find() ? matcher.group(1) : null;
+  }
+}
@@ -0,0 +1,334 @@
+package com.hyd.jsp.build;
+
+import com.hyd.jsp.cache.BuildCache;
+import com.hyd.jsp.cache.FileHashCache;
+import com.hyd.jsp.metrics.PackagerMetrics;
+import com.hyd.jsp.utils.Commands;
+import com.hyd.jsp.utils.Hashes;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 以编译规避的方式逐个模块构建多模块项目。只开启并行构建时不使用此类，而是由 Maven reactor 以 -T 参数在一个进程中构建。
+ * <p>
+ * 每个模块构建后将编译结果和 {@link AbiFingerprint ABI 摘要}保存到构建缓存中。
+ * 下次构建时如果模块自身的源码、父模块的 pom 和直接或间接依赖的上游模块的 ABI 都没有变化，
+ * 则恢复缓存的编译结果并跳过编译（maven.main.skip），只执行打包等其他步骤；
+ * 如果构建时解析到的外部依赖与缓存的不同，再重新编译一次。上游模块只修改了实现时，下游模块不需要重新编译。
+ * <p>
+ * 是否跳过编译要等上游模块构建完成后才能确定，所以每个模块单独执行一次 Maven 命令（-pl groupId:artifactId），
+ * 互不依赖的模块在 work-stealing 线程池中同时构建。下游模块从本地仓库获取上游模块，
+ * 所以构建命令中 install 之前的生命周期阶段都改为 install，并且 install 到任务单独的位置
+ * （见 {@link MavenRepository#withJobRepository}，需要 Maven 3.9），同一项目不同版本的构建不会互相覆盖。
+ * 任一模块失败后不再开始新的模块，已开始的模块结束后抛出异常。
+ */
+@Component
+@Slf4j
+public class ModuleBuilder {
+
+  private static final String CLASSES_DIRECTORY = "target/classes";
+
+  private static final String ABI_ATTRIBUTE = "abi";
+
+  private static final String CLASSPATH_ATTRIBUTE = "classpath";
+
+  private static final List<String> MAVEN_CONFIG_FILES = List.of(".mvn/maven.config", ".mvn/jvm.config", ".mvn/extensions.xml");
+
+  private static final Set<String> PHASES_BEFORE_INSTALL = Set.of(
+    "validate", "initialize", "generate-sources", "process-sources", "generate-resources", "process-resources",
+    "compile", "process-classes", "generate-test-sources", "process-test-sources", "generate-test-resources",
+    "process-test-resources", "test-compile", "process-test-classes", "test", "prepare-package", "package",
+    "pre-integration-test", "integration-test", "post-integration-test", "verify"
+  );
+
+  // 逐个模块执行时去掉 clean，否则会删除已恢复的编译结果。Git 源码每次检出新的工作树，不需要 clean
+  private static final Set<String> CLEAN_PHASES = Set.of("pre-clean", "clean", "post-clean", "clean:clean");
+
+  @Autowired
+  private BuildCache buildCache;
+
+  @Autowired
+  private MavenRepository mavenRepository;
+
+  @Autowired
+  private FileHashCache fileHashCache;
+
+  @Autowired
+  private PackagerMetrics metrics;
+
+  /**
+   * 构建所有模块
+   *
+   * @param jobId            任务 ID
+   * @param graph            模块依赖图
+   * @param command          构建命令
+   * @param sourceDir        源码目录
+   * @param parallelism      同时构建的模块数
+   * @param logFile          日志文件，每个模块的输出在模块构建结束后整体追加到日志中
+   */
+  public void build(
+    String jobId, ModuleGraph graph, List<String> command, Path sourceDir, int parallelism, Path logFile
+  ) throws IOException, InterruptedException {
+
+    var installCommand = toInstallCommand(command);
+    var jobRepository = mavenRepository.jobRepository(installCommand, jobId);
+    var build = new ModuleBuild(jobId, graph, mavenRepository.withJobRepository(installCommand, jobId), installCommand,
+      jobRepository, sourceDir, logFile);
+    var futures = new HashMap<String, CompletableFuture<Void>>();
+    var pool = Executors.newWorkStealingPool(parallelism);
+    var start = System.currentTimeMillis();
+
+    try {
+      for (var module : graph.sortedModules()) {
+        var upstream = module.getUpstream().stream().map(futures::get).toArray(CompletableFuture[]::new);
+        futures.put(module.getId(), CompletableFuture.allOf(upstream).thenRunAsync(() -> buildModule(build, module), pool));
+      }
+      CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).get();
+    } catch (ExecutionException e) {
+      var cause = e.getCause();
+      while (cause instanceof CompletionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Failed to build modules of job " + jobId, cause);
+    } finally {
+      pool.shutdownNow();
+      // 等已开始的 Maven 进程结束后再删除任务 install 的构件
+      try {
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+      } finally {
+        FileSystemUtils.deleteRecursively(jobRepository);
+      }
+    }
+
+    log.info("{} modules of job {} built with parallelism {} in {} ms, {} compilations avoided",
+      graph.size(), jobId, parallelism, System.currentTimeMillis() - start, build.avoidedCompilations.get());
+  }
+
+  private void buildModule(ModuleBuild build, ModuleGraph.Module module) {
+    if (build.failed.get()) {
+      throw new CompletionException(new IOException("Module " + module + " skipped after failure"));
+    }
+
+    var command = new ArrayList<>(build.command);
+    command.add("-pl");
+    command.add(module.getId());
+    var moduleLogFile = build.logFile.resolveSibling(build.logFile.getFileName() + "." + module.getId().replace(':', '_'));
+    // 同时输出模块的编译 classpath，用于检查外部依赖是否变化
+    var classpathFile = moduleLogFile.resolveSibling(moduleLogFile.getFileName() + ".classpath").toAbsolutePath();
+    command.add(MavenRepository.DEPENDENCY_PLUGIN + ":build-classpath");
+    command.add("-Dmdep.outputFile=" + classpathFile);
+    command.add("-Dmdep.includeScope=compile");
+    var start = System.currentTimeMillis();
+    try {
+      var classesDir = module.getDirectory().resolve(CLASSES_DIRECTORY);
+      var compileKey = compileKey(build, module);
+      var attributes = restoreClasses(compileKey, classesDir);
+      if (attributes != null) {
+        var skipCommand = new ArrayList<>(command);
+        skipCommand.add("-Dmaven.main.skip=true");
+        Commands.run(skipCommand, build.sourceDir, moduleLogFile);
+        if (classpathHash(build, classpathFile).equals(attributes.get(CLASSPATH_ATTRIBUTE))) {
+          metrics.recordCache(PackagerMetrics.CACHE_COMPILE, true);
+          build.abis.put(module.getId(), attributes.get(ABI_ATTRIBUTE));
+          build.avoidedCompilations.incrementAndGet();
+          log.info("Module {} of job {} built without compilation in {} ms", module, build.jobId, System.currentTimeMillis() - start);
+          return;
+        }
+        // 外部依赖变化了，缓存的编译结果不可用
+        log.info("Classpath of module {} of job {} changed, compiling again", module, build.jobId);
+        FileSystemUtils.deleteRecursively(classesDir);
+      }
+      metrics.recordCache(PackagerMetrics.CACHE_COMPILE, false);
+
+      Commands.run(command, build.sourceDir, moduleLogFile);
+
+      var abi = AbiFingerprint.compute(classesDir);
+      build.abis.put(module.getId(), abi);
+      if (Files.isDirectory(classesDir)) {
+        buildCache.storeDirectory(compileKey, classesDir,
+          Map.of(ABI_ATTRIBUTE, abi, CLASSPATH_ATTRIBUTE, classpathHash(build, classpathFile)));
+      }
+      log.info("Module {} of job {} built in {} ms", module, build.jobId, System.currentTimeMillis() - start);
+    } catch (IOException e) {
+      build.failed.set(true);
+      throw new CompletionException(new IOException("Module " + module + " failed: " + e.getMessage(), e));
+    } catch (InterruptedException e) {
+      build.failed.set(true);
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    } finally {
+      try {
+        Files.deleteIfExists(classpathFile);
+      } catch (IOException e) {
+        log.warn("Failed to delete {}", classpathFile, e);
+      }
+      Commands.appendLog(moduleLogFile, build.logFile, module.getId());
+    }
+  }
+
+  /**
+   * 模块的编译结果取决于：
+   * <ul>
+   *   <li>模块自身的源码，不含 target 目录和位于模块目录下的其他模块</li>
+   *   <li>本项目内各级父模块的 pom.xml（dependencyManagement、编译器配置等）以及 .mvn 下的 Maven 配置</li>
+   *   <li>直接和间接依赖的本项目内模块的 ABI</li>
+   *   <li>构建命令</li>
+   * </ul>
+   * 外部依赖只有在构建时才能解析，不在键中，而是与编译结果一起保存，恢复后再比较，见 {@link #classpathHash}
+   */
+  private String compileKey(ModuleBuild build, ModuleGraph.Module module) throws IOException {
+    var excludedDirs = new ArrayList<>(build.graph.nestedModuleDirectories(module));
+    excludedDirs.add(module.getDirectory().resolve("target"));
+
+    var key = new StringBuilder("compile\n")
+      .append(module.getId()).append('\n')
+      .append(buildCache.hashSourceTree(module.getDirectory(), excludedDirs)).append('\n')
+      .append(String.join(" ", build.keyCommand)).append('\n');
+    for (var ancestor : build.graph.ancestors(module)) {
+      key.append("parent ").append(ancestor.getId()).append('=')
+        .append(fileHashCache.sha256(ancestor.getDirectory().resolve("pom.xml"))).append('\n');
+    }
+    for (var config : MAVEN_CONFIG_FILES) {
+      var configFile = build.sourceDir.resolve(config);
+      if (Files.isRegularFile(configFile)) {
+        key.append(config).append('=').append(fileHashCache.sha256(configFile)).append('\n');
+      }
+    }
+    for (var upstream : build.graph.upstreamClosure(module)) {
+      key.append(upstream).append('=').append(build.abis.get(upstream)).append('\n');
+    }
+    return Hashes.sha256Hex(key.toString());
+  }
+
+  /**
+   * 计算模块编译 classpath 中外部依赖的摘要：每个依赖文件的名称和内容摘要。
+   * 本项目的模块（任务 install 的构件和源码目录中的文件）由 ABI 摘要检查，不参与计算
+   */
+  private String classpathHash(ModuleBuild build, Path classpathFile) throws IOException {
+    if (!Files.isRegularFile(classpathFile)) {
+      return "";
+    }
+    var digest = Hashes.sha256();
+    for (var entry : Files.readString(classpathFile).trim().split(File.pathSeparator)) {
+      if (entry.isEmpty()) {
+        continue;
+      }
+      var path = Path.of(entry).toAbsolutePath().normalize();
+      if (path.startsWith(build.sourceDir.toAbsolutePath().normalize()) || isModuleArtifact(build, path)) {
+        continue;
+      }
+      var hash = Files.isRegularFile(path) ? fileHashCache.sha256(path) : "";
+      digest.update((path.getFileName() + "=" + hash + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    return Hashes.toHex(digest.digest());
+  }
+
+  private static boolean isModuleArtifact(ModuleBuild build, Path path) {
+    if (!path.startsWith(build.jobRepository)) {
+      return false;
+    }
+    var relativePath = build.jobRepository.relativize(path);
+    for (var module : build.graph.getModules()) {
+      var modulePath = Path.of(module.getGroupId().replace('.', '/'), module.getArtifactId());
+      if (relativePath.startsWith(modulePath)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 恢复缓存的编译结果，先清空编译结果目录，避免残留的旧文件
+   *
+   * @return 缓存的附加信息，缓存不存在时返回 null
+   */
+  private Map<String, String> restoreClasses(String compileKey, Path classesDir) throws IOException {
+    var restoredDir = classesDir.resolveSibling(classesDir.getFileName() + ".restore");
+    FileSystemUtils.deleteRecursively(restoredDir);
+    Files.createDirectories(restoredDir);
+    var attributes = buildCache.restoreDirectory(compileKey, restoredDir);
+    if (attributes == null || !attributes.containsKey(ABI_ATTRIBUTE) || !attributes.containsKey(CLASSPATH_ATTRIBUTE)) {
+      FileSystemUtils.deleteRecursively(restoredDir);
+      return null;
+    }
+    FileSystemUtils.deleteRecursively(classesDir);
+    Files.move(restoredDir, classesDir);
+    return attributes;
+  }
+
+  /**
+   * 将构建命令中 install 之前的生命周期阶段改为 install，去掉 clean
+   */
+  private static List<String> toInstallCommand(List<String> command) {
+    var result = new ArrayList<String>(command.size());
+    result.add(command.get(0));
+    var installAdded = false;
+    for (var arg : command.subList(1, command.size())) {
+      if (CLEAN_PHASES.contains(arg)) {
+        continue;
+      }
+      if (PHASES_BEFORE_INSTALL.contains(arg) || arg.equals("install")) {
+        if (!installAdded) {
+          result.add("install");
+          installAdded = true;
+        }
+      } else {
+        result.add(arg);
+      }
+    }
+    return result;
+  }
+
+  private static class ModuleBuild {
+
+    private final String jobId;
+
+    private final ModuleGraph graph;
+
+    private final List<String> command;
+
+    // 计算编译缓存的键时使用的构建命令，不含任务单独的本地仓库
+    private final List<String> keyCommand;
+
+    private final Path jobRepository;
+
+    private final Path sourceDir;
+
+    private final Path logFile;
+
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    private final AtomicInteger avoidedCompilations = new AtomicInteger();
+
+    // 已构建模块的 ABI 摘要
+    private final Map<String, String> abis = new ConcurrentHashMap<>();
+
+    private ModuleBuild(
+      String jobId, ModuleGraph graph, List<String> command, List<String> keyCommand,
+      Path jobRepository, Path sourceDir, Path logFile
+    ) {
+      this.jobId = jobId;
+      this.graph = graph;
+      this.command = command;
+      this.keyCommand = keyCommand;
+      this.jobRepository = jobRepository;
+      this.sourceDir = sourceDir;
+      this.logFile = logFile;
+    }
+  }
+}
@@ -0,0 +1,419 @@
+package com.hyd.jsp.build;
+
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Maven 多模块项目的模块依赖图，从 pom.xml 的 modules、parent 和 dependencies 解析得到。
+ * 模块之间按 groupId:artifactId 匹配，只记录对本项目内其他模块的依赖。
+ * groupId 中只识别 ${project.groupId}、${project.parent.groupId} 和 pom 自身 properties 中定义的属性。
+ * 同时记录依赖的外部 SNAPSHOT 构件（parent、dependencies、dependencyManagement），版本中的属性按本项目内各级父 pom 的 properties 解析。
+ */
+public class ModuleGraph {
+
+  private final Map<String, Module> modules;
+
+  private final SortedSet<String> externalSnapshots;
+
+  private ModuleGraph(Map<String, Module> modules, SortedSet<String> externalSnapshots) {
+    this.modules = modules;
+    this.externalSnapshots = externalSnapshots;
+  }
+
+  /**
+   * 解析项目的模块依赖图
+   *
+   * @param rootDir 项目根目录，即根 pom.xml 所在目录
+   */
+  public static ModuleGraph parse(Path rootDir) throws IOException {
+    var poms = new LinkedHashMap<Path, Pom>();
+    collect(rootDir.toAbsolutePath().normalize(), poms);
+
+    var ids = new HashSet<String>();
+    var pomsById = new HashMap<String, Pom>();
+    for (var pom : poms.values()) {
+      ids.add(pom.id());
+      pomsById.put(pom.id(), pom);
+    }
+
+    var externalSnapshots = new TreeSet<String>();
+    for (var pom : poms.values()) {
+      var properties = inheritedProperties(pom, pomsById);
+      for (var artifact : pom.versionedArtifacts) {
+        var id = resolve(artifact[0], properties) + ":" + artifact[1];
+        var version = resolve(artifact[2], properties);
+        if (!ids.contains(id) && version.endsWith("-SNAPSHOT")) {
+          externalSnapshots.add(id + ":" + version);
+        }
+      }
+    }
+
+    var modules = new LinkedHashMap<String, Module>();
+    for (var pom : poms.values()) {
+      var upstream = new LinkedHashSet<String>();
+      var parentId = pom.parentId != null && ids.contains(pom.parentId) ? pom.parentId : null;
+      if (parentId != null) {
+        upstream.add(parentId);
+      }
+      for (var dependency : pom.dependencies) {
+        if (ids.contains(dependency) && !dependency.equals(pom.id())) {
+          upstream.add(dependency);
+        }
+      }
+      modules.put(pom.id(), new Module(pom.groupId, pom.artifactId, pom.directory, parentId, upstream));
+    }
+    return new ModuleGraph(modules, externalSnapshots);
+  }
+
+  /**
+   * pom 自身和本项目内各级父 pom 的 properties，近的优先
+   */
+  private static Map<String, String> inheritedProperties(Pom pom, Map<String, Pom> pomsById) {
+    var chain = new ArrayList<Pom>();
+    for (var current = pom; current != null && !chain.contains(current); current = pomsById.get(current.parentId)) {
+      chain.add(current);
+    }
+    var properties = new HashMap<String, String>();
+    for (var i = chain.size() - 1; i >= 0; i--) {
+      properties.putAll(chain.get(i).properties);
+    }
+    return properties;
+  }
+
+  // 只替换整个值是一个属性引用的情况，未定义的属性原样保留
+  private static String resolve(String value, Map<String, String> properties) {
+    if (value.startsWith("${") && value.endsWith("}")) {
+      return properties.getOrDefault(value.substring(2, value.length() - 1), value);
+    }
+    return value;
+  }
+
+  /**
+   * 是否包含多个模块
+   */
+  public boolean isMultiModule() {
+    return modules.size() > 1;
+  }
+
+  public int size() {
+    return modules.size();
+  }
+
+  public Collection<Module> getModules() {
+    return Collections.unmodifiableCollection(modules.values());
+  }
+
+  /**
+   * @param id 模块的 groupId:artifactId
+   */
+  public Module getModule(String id) {
+    return modules.get(id);
+  }
+
+  /**
+   * 依赖的不属于本项目的 SNAPSHOT 构件，其内容可能在源码不变时改变
+   *
+   * @return groupId:artifactId:version 的集合，按字母排序
+   */
+  public SortedSet<String> getExternalSnapshots() {
+    return Collections.unmodifiableSortedSet(externalSnapshots);
+  }
+
+  /**
+   * 模块直接和间接依赖的所有本项目内的模块
+   *
+   * @return groupId:artifactId 的集合，按字母排序
+   */
+  public SortedSet<String> upstreamClosure(Module module) {
+    var result = new TreeSet<String>();
+    var pending = new ArrayDeque<>(module.getUpstream());
+    while (!pending.isEmpty()) {
+      var id = pending.poll();
+      if (result.add(id)) {
+        pending.addAll(modules.get(id).getUpstream());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 模块的父模块，从直接父模块开始，直到不在本项目内的父 pom 为止
+   */
+  public List<Module> ancestors(Module module) {
+    var result = new ArrayList<Module>();
+    for (var parentId = module.getParentId(); parentId != null; parentId = modules.get(parentId).getParentId()) {
+      var parent = modules.get(parentId);
+      if (result.contains(parent)) {
+        throw new IllegalStateException("模块 " + module.getArtifactId() + " 的父模块存在循环");
+      }
+      result.add(parent);
+    }
+    return result;
+  }
+
+  /**
+   * 位于模块目录下的其他模块的目录
+   */
+  public List<Path> nestedModuleDirectories(Module module) {
+    var result = new ArrayList<Path>();
+    for (var other : modules.values()) {
+      if (other != module && other.getDirectory().startsWith(module.getDirectory())
+        && !other.getDirectory().equals(module.getDirectory())) {
+        result.add(other.getDirectory());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 按依赖顺序排列的模块，每个模块都排在它依赖的模块之后
+   *
+   * @throws IllegalStateException 模块之间存在循环依赖
+   */
+  public List<Module> sortedModules() {
+    var sorted = new ArrayList<Module>(modules.size());
+    var states = new HashMap<String, Boolean>();
+    for (var module : modules.values()) {
+      visit(module, states, sorted);
+    }
+    return sorted;
+  }
+
+  private void visit(Module module, Map<String, Boolean> states, List<Module> sorted) {
+    var state = states.get(module.getId());
+    if (Boolean.TRUE.equals(state)) {
+      return;
+    }
+    if (Boolean.FALSE.equals(state)) {
+      throw new IllegalStateException("模块 " + module.getArtifactId() + " 存在循环依赖");
+    }
+
+    states.put(module.getId(), false);
+    for (var upstream : module.getUpstream()) {
+      visit(modules.get(upstream), states, sorted);
+    }
+    states.put(module.getId(), true);
+    sorted.add(module);
+  }
+
+  private static void collect(Path directory, Map<Path, Pom> poms) throws IOException {
+    if (poms.containsKey(directory)) {
+      return;
+    }
+    var pomFile = directory.resolve("pom.xml");
+    if (!Files.isRegularFile(pomFile)) {
+      return;
+    }
+
+    var pom = Pom.read(pomFile);
+    poms.put(directory, pom);
+    for (var module : pom.modules) {
+      var moduleDir = directory.resolve(module).normalize();
+      // modules 中也可以直接写 pom 文件路径
+      collect(Files.isRegularFile(moduleDir) ? moduleDir.getParent() : moduleDir, poms);
+    }
+  }
+
+  public static class Module {
+
+    private final String groupId;
+
+    private final String artifactId;
+
+    private final Path directory;
+
+    // 本项目内的父模块的 groupId:artifactId
+    private final String parentId;
+
+    // 依赖的本项目内其他模块的 groupId:artifactId
+    private final Set<String> upstream;
+
+    private Module(String groupId, String artifactId, Path directory, String parentId, Set<String> upstream) {
+      this.groupId = groupId;
+      this.artifactId = artifactId;
+      this.directory = directory;
+      this.parentId = parentId;
+      this.upstream = Collections.unmodifiableSet(upstream);
+    }
+
+    public String getGroupId() {
+      return groupId;
+    }
+
+    public String getArtifactId() {
+      return artifactId;
+    }
+
+    /**
+     * groupId:artifactId，也是 Maven -pl 参数的格式
+     */
+    public String getId() {
+      return groupId + ":" + artifactId;
+    }
+
+    public Path getDirectory() {
+      return directory;
+    }
+
+    /**
+     * 父模块的 groupId:artifactId，父 pom 不是本项目的模块时返回 null
+     */
+    public String getParentId() {
+      return parentId;
+    }
+
+    public Set<String> getUpstream() {
+      return upstream;
+    }
+
+    @Override
+    public String toString() {
+      return artifactId;
+    }
+  }
+
+  private static class Pom {
+
+    private Path directory;
+
+    private String groupId;
+
+    private String artifactId;
+
+    private String parentId;
+
+    private final Map<String, String> properties = new HashMap<>();
+
+    private final List<String> modules = new ArrayList<>();
+
+    // 依赖的 groupId:artifactId
+    private final List<String> dependencies = new ArrayList<>();
+
+    // 指定了版本的 parent 和依赖：groupId、artifactId、version，均未解析属性
+    private final List<String[]> versionedArtifacts = new ArrayList<>();
+
+    private String id() {
+      return groupId + ":" + artifactId;
+    }
+
+    private static Pom read(Path pomFile) throws IOException {
+      Element project;
+      try {
+        var factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        project = factory.newDocumentBuilder().parse(pomFile.toFile()).getDocumentElement();
+      } catch (ParserConfigurationException | SAXException e) {
+        throw new IOException("Failed to parse " + pomFile, e);
+      }
+
+      var pom = new Pom();
+      pom.directory = pomFile.getParent();
+      pom.artifactId = childText(project, "artifactId");
+      if (pom.artifactId == null) {
+        throw new IOException("Missing artifactId in " + pomFile);
+      }
+
+      String parentGroupId = null;
+      String parentVersion = null;
+      var parent = child(project, "parent");
+      if (parent != null) {
+        parentGroupId = childText(parent, "groupId");
+        parentVersion = childText(parent, "version");
+        pom.parentId = parentGroupId + ":" + childText(parent, "artifactId");
+        pom.addVersionedArtifact(parent);
+      }
+      pom.groupId = Objects.requireNonNullElse(childText(project, "groupId"), parentGroupId);
+      if (pom.groupId == null) {
+        throw new IOException("Missing groupId in " + pomFile);
+      }
+
+      var properties = child(project, "properties");
+      if (properties != null) {
+        for (var node = properties.getFirstChild(); node != null; node = node.getNextSibling()) {
+          if (node instanceof Element) {
+            pom.properties.put(node.getNodeName(), node.getTextContent().trim());
+          }
+        }
+      }
+      pom.properties.put("project.groupId", pom.groupId);
+      pom.properties.put("pom.groupId", pom.groupId);
+      pom.properties.put("groupId", pom.groupId);
+      if (parentGroupId != null) {
+        pom.properties.put("project.parent.groupId", parentGroupId);
+      }
+      var version = childText(project, "version");
+      version = version != null ? version : parentVersion;
+      if (version != null) {
+        pom.properties.put("project.version", version);
+      }
+      if (parentVersion != null) {
+        pom.properties.put("project.parent.version", parentVersion);
+      }
+
+      var modules = child(project, "modules");
+      if (modules != null) {
+        for (var module : children(modules, "module")) {
+          pom.modules.add(module.getTextContent().trim());
+        }
+      }
+
+      var dependencies = child(project, "dependencies");
+      if (dependencies != null) {
+        for (var dependency : children(dependencies, "dependency")) {
+          var groupId = childText(dependency, "groupId");
+          var artifactId = childText(dependency, "artifactId");
+          if (groupId != null && artifactId != null) {
+            pom.dependencies.add(ModuleGraph.resolve(groupId, pom.properties) + ":" + artifactId);
+          }
+          pom.addVersionedArtifact(dependency);
+        }
+      }
+      var dependencyManagement = child(project, "dependencyManagement");
+      dependencies = dependencyManagement == null ? null : child(dependencyManagement, "dependencies");
+      if (dependencies != null) {
+        for (var dependency : children(dependencies, "dependency")) {
+          pom.addVersionedArtifact(dependency);
+        }
+      }
+      return pom;
+    }
+
+    private void addVersionedArtifact(Element element) {
+      var groupId = childText(element, "groupId");
+      var artifactId = childText(element, "artifactId");
+      var version = childText(element, "version");
+      if (groupId != null && artifactId != null && version != null) {
+        versionedArtifacts.add(new String[]{groupId, artifactId, version});
+      }
+    }
+
+    private static Element child(Element element, String name) {
+      var children = children(element, name);
+      return children.isEmpty() ? null : children.get(0);
+    }
+
+    private static String childText(Element element, String name) {
+      var child = child(element, name);
+      return child == null ? null : child.getTextContent().trim();
+    }
+
+    private static List<Element> children(Element element, String name) {
+      var result = new ArrayList<Element>();
+      for (var node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+        if (node instanceof Element && name.equals(node.getNodeName())) {
+          result.add((Element) node);
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,398 @@
+package com.hyd.jsp.build;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.archive.BundlePackager;
+import com.hyd.jsp.archive.DeltaPackager;
+import com.hyd.jsp.archive.LayersManifest;
+import com.hyd.jsp.cache.BuildCache;
+import com.hyd.jsp.cache.FileHashCache;
+import com.hyd.jsp.job.BuildJob;
+import com.hyd.jsp.log.BuildLogService;
+import com.hyd.jsp.metrics.PackagerMetrics;
+import com.hyd.jsp.model.ArchiveFormat;
+import com.hyd.jsp.model.BuildExecutor;
+import com.hyd.jsp.model.BuildParams;
+import com.hyd.jsp.source.SourceWorkspace;
+import com.hyd.jsp.source.SourceWorkspaceManager;
+import com.hyd.jsp.utils.Commands;
+import com.hyd.jsp.utils.Jackson;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 构建流程：准备源码、查找缓存、执行构建命令、生成服务包
+ */
+@Component
+@Slf4j
+public class PackagingPipeline {
+
+  // 保存项目最近一次成功构建的任务 ID，位于项目的产物目录下
+  private static final String LATEST_SUCCEEDED_FILE_NAME = "latest-succeeded";
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  @Autowired
+  private BuildCache buildCache;
+
+  @Autowired
+  private FileHashCache fileHashCache;
+
+  @Autowired
+  private SourceWorkspaceManager sourceWorkspaceManager;
+
+  @Autowired
+  private BundlePackager bundlePackager;
+
+  @Autowired
+  private DeltaPackager deltaPackager;
+
+  @Autowired
+  private MavenDaemon mavenDaemon;
+
+  @Autowired
+  private MavenVersion mavenVersion;
+
+  @Autowired
+  private ModuleBuilder moduleBuilder;
+
+  @Autowired
+  private MavenRepository mavenRepository;
+
+  @Autowired
+  private PackagerMetrics metrics;
+
+  @Autowired
+  private BuildLogService buildLogService;
+
+  public void run(BuildJob job) throws IOException, InterruptedException {
+    var params = job.getPackagingParams();
+    params.validate();
+    var logFile = buildLogService.logFile(job.getId());
+
+    var sourceStart = System.nanoTime();
+    try (var workspace = sourceWorkspaceManager.prepare(job.getId(), params.getSourceParams(), job.getRequestedRevision(), logFile)) {
+      metrics.recordPhase(PackagerMetrics.PHASE_SOURCE, job.getProject(), sourceStart);
+      job.setRevision(workspace.getRevision());
+      buildInWorkspace(job, workspace);
+    }
+    writeArtifactHashes(job.getProject(), job.getId(), job.getArtifacts());
+    markSucceeded(job.getProject(), job.getId());
+  }
+
+  private void buildInWorkspace(BuildJob job, SourceWorkspace workspace) throws IOException, InterruptedException {
+    var params = job.getPackagingParams();
+    var sourceDir = workspace.getDirectory();
+    var buildParams = params.getBuildParams();
+    var artifactDir = artifactDirectory(job.getProject(), job.getId());
+
+    String cacheKey = null;
+    if (config.isBuildCacheEnabled()) {
+      cacheKey = cacheKey(job, workspace, sourceDir, buildParams);
+    }
+    if (cacheKey != null && !job.isNoCache()) {
+      var cachedArtifacts = buildCache.restore(cacheKey, artifactDir);
+      metrics.recordCache(PackagerMetrics.CACHE_BUILD, cachedArtifacts != null);
+      if (cachedArtifacts != null) {
+        log.info("Job {} of project {} uses cached artifacts {}", job.getId(), job.getProject(), cacheKey);
+        job.setCacheHit(true);
+        job.setArtifacts(withDelta(job, cachedArtifacts));
+        return;
+      }
+    }
+
+    // 缓存未命中才需要依赖，缺少的依赖与构建同时下载，构建结束时下载一定已结束
+    var logFile = buildLogService.logFile(job.getId());
+    var buildStart = System.nanoTime();
+    try (var prewarm = mavenRepository.prewarm(job.getProject(), buildParams.getCommand(), sourceDir, logFile)) {
+      build(job, sourceDir, buildParams);
+    }
+    metrics.recordPhase(PackagerMetrics.PHASE_BUILD, job.getProject(), buildStart);
+    mavenRepository.recordDependencies(job.getProject(), buildParams.getCommand(), sourceDir, logFile);
+
+    var packageStart = System.nanoTime();
+    var artifacts = bundlePackager.pack(job.getProject(), sourceDir, params, artifactDir, logFile);
+    metrics.recordPhase(PackagerMetrics.PHASE_PACKAGE, job.getProject(), packageStart);
+
+    if (cacheKey != null) {
+      buildCache.store(cacheKey, artifactDir, artifacts);
+    }
+    job.setArtifacts(withDelta(job, artifacts));
+  }
+
+  /**
+   * 构建缓存的键，由源码、构建配置和构建使用的 Maven/JDK 版本决定。
+   * 依赖外部 SNAPSHOT 的 Maven 项目即使这些都不变，构建结果也可能不同，不使用缓存
+   *
+   * @return 缓存的键，不能使用缓存时返回 null
+   */
+  private String cacheKey(BuildJob job, SourceWorkspace workspace, Path sourceDir, BuildParams buildParams)
+    throws IOException, InterruptedException {
+
+    var command = buildParams.getCommand();
+    String toolVersions;
+    if (MavenDaemon.isMavenCommand(command)) {
+      var externalSnapshots = ModuleGraph.parse(sourceDir).getExternalSnapshots();
+      if (!externalSnapshots.isEmpty()) {
+        log.info("Job {} of project {} depends on snapshots {}, build cache is not used",
+          job.getId(), job.getProject(), externalSnapshots);
+        return null;
+      }
+      toolVersions = "maven " + mavenVersion.detect(command, sourceDir)
+        + "\njava " + mavenVersion.detectJava(command, sourceDir);
+    } else {
+      toolVersions = "java " + mavenVersion.detectJava(List.of(), sourceDir);
+    }
+
+    var sourceTreeHash = workspace.getTreeId() != null
+      ? "git-tree:" + workspace.getTreeId()
+      : buildCache.hashSourceTree(sourceDir, outputDirectories(sourceDir, buildParams));
+    return buildCache.fingerprint(job.getProject(), sourceTreeHash, toolVersions, job.getPackagingParams());
+  }
+
+  /**
+   * 增量包与上次成功的构建有关，不放入缓存，每次构建单独生成
+   */
+  private List<String> withDelta(BuildJob job, List<String> artifacts) throws IOException {
+    if (!job.getPackagingParams().getArchiveParams().isDelta()) {
+      return artifacts;
+    }
+    var previous = findLatestPackage(job.getProject());
+    if (previous == null) {
+      return artifacts;
+    }
+    var deltaFile = createDelta(job.getProject(), previous, job.getId());
+    if (deltaFile == null) {
+      return artifacts;
+    }
+    var result = new ArrayList<>(artifacts);
+    result.add(deltaFile.getFileName().toString());
+    return result;
+  }
+
+  /**
+   * 记录项目最近一次成功的构建。失败的构建即使已经生成了文件清单，也不会作为增量包的基准
+   */
+  private void markSucceeded(String project, String jobId) throws IOException {
+    var markerFile = latestSucceededFile(project);
+    var tempFile = markerFile.resolveSibling(markerFile.getFileName() + "." + jobId + ".tmp");
+    Files.createDirectories(markerFile.getParent());
+    Files.writeString(tempFile, jobId);
+    Files.move(tempFile, markerFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private Path latestSucceededFile(String project) {
+    return config.workPath("artifacts", project, LATEST_SUCCEEDED_FILE_NAME);
+  }
+
+  /**
+   * 查找项目最近一次成功且生成了文件清单的构建
+   *
+   * @param project 项目名称
+   *
+   * @return 任务 ID，不存在时返回 null
+   */
+  public String findLatestPackage(String project) throws IOException {
+    var markerFile = latestSucceededFile(project);
+    if (!Files.isRegularFile(markerFile)) {
+      return null;
+    }
+    var jobId = Files.readString(markerFile).trim();
+    return BuildJob.ID_PATTERN.matcher(jobId).matches() && Files.isRegularFile(layersManifestFile(project, jobId))
+      ? jobId : null;
+  }
+
+  /**
+   * 查找两次构建之间的增量包。目标构建时已相对上次成功的构建生成；其他起始构建的增量包在这里按两次构建的文件清单生成，
+   * 同样保存在目标构建的产物目录中，再次请求时直接使用
+   *
+   * @return 增量包文件，任一构建没有文件清单（没有开启 archiveParams.delta 或构建未完成）时返回 null
+   */
+  public Path findDelta(String project, String from, String to) throws IOException {
+    if (!BuildJob.ID_PATTERN.matcher(from).matches() || !BuildJob.ID_PATTERN.matcher(to).matches() || from.equals(to)) {
+      return null;
+    }
+    var deltaFile = deltaFile(project, from, to);
+    return Files.isRegularFile(deltaFile) ? deltaFile : createDelta(project, from, to);
+  }
+
+  private Path createDelta(String project, String from, String to) throws IOException {
+    var fromManifestFile = layersManifestFile(project, from);
+    var toManifestFile = layersManifestFile(project, to);
+    if (!Files.isRegularFile(fromManifestFile) || !Files.isRegularFile(toManifestFile)) {
+      return null;
+    }
+
+    var deltaFile = deltaFile(project, from, to);
+    if (!Files.exists(deltaFile)) {
+      deltaPackager.create(
+        project,
+        from, Jackson.deserializeStandardJson(Files.readString(fromManifestFile), LayersManifest.class),
+        to, Jackson.deserializeStandardJson(Files.readString(toManifestFile), LayersManifest.class),
+        deltaFile
+      );
+    }
+    return deltaFile;
+  }
+
+  private Path deltaFile(String project, String from, String to) {
+    return artifactDirectory(project, to).resolve(project + "-delta-" + from + ".zip");
+  }
+
+  /**
+   * 构建结束时记录产物的内容摘要，格式与 sha256sum 的输出相同。下载时以此作为 ETag，服务重启后不需要重新计算
+   */
+  private void writeArtifactHashes(String project, String jobId, List<String> artifacts) throws IOException {
+    var artifactDir = artifactDirectory(project, jobId);
+    var content = new StringBuilder();
+    for (var artifact : artifacts) {
+      content.append(fileHashCache.sha256(artifactDir.resolve(artifact))).append("  ").append(artifact).append('\n');
+    }
+    var hashesFile = artifactHashesFile(project, jobId);
+    var tempFile = hashesFile.resolveSibling(hashesFile.getFileName() + ".tmp");
+    Files.writeString(tempFile, content);
+    Files.move(tempFile, hashesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * 获得产物的内容摘要。优先使用构建时记录的摘要，没有记录时（如早期版本的构建）才计算
+   *
+   * @param artifactFile {@link #findArtifact} 或 {@link #findDelta} 返回的文件
+   */
+  public String artifactHash(String project, String jobId, Path artifactFile) throws IOException {
+    var hashesFile = artifactHashesFile(project, jobId);
+    if (Files.isRegularFile(hashesFile)) {
+      var fileName = artifactFile.getFileName().toString();
+      for (var line : Files.readAllLines(hashesFile)) {
+        var separator = line.indexOf("  ");
+        if (separator > 0 && line.substring(separator + 2).equals(fileName)) {
+          return line.substring(0, separator);
+        }
+      }
+    }
+    return fileHashCache.sha256(artifactFile);
+  }
+
+  private Path artifactHashesFile(String project, String jobId) {
+    return config.workPath("artifacts", project, jobId + ".sha256");
+  }
+
+  /**
+   * 查找构建产物
+   *
+   * @param project  项目名称
+   * @param jobId    任务 ID
+   * @param fileName 产物文件名，为 null 时查找服务包，没有服务包且只有一个产物时返回该产物
+   *
+   * @return 产物文件，不存在时返回 null
+   */
+  public Path findArtifact(String project, String jobId, String fileName) throws IOException {
+    var artifactDir = artifactDirectory(project, jobId);
+    if (!BuildJob.ID_PATTERN.matcher(jobId).matches() || !Files.isDirectory(artifactDir)) {
+      return null;
+    }
+
+    if (fileName != null) {
+      var file = artifactDir.resolve(fileName).normalize();
+      return artifactDir.equals(file.getParent()) && Files.isRegularFile(file) ? file : null;
+    }
+
+    for (var format : ArchiveFormat.values()) {
+      var bundle = artifactDir.resolve(project + format.getExtension());
+      if (format != ArchiveFormat.NONE && Files.isRegularFile(bundle)) {
+        return bundle;
+      }
+    }
+    try (var files = Files.list(artifactDir)) {
+      var artifacts = files.filter(Files::isRegularFile).limit(2).collect(Collectors.toList());
+      return artifacts.size() == 1 ? artifacts.get(0) : null;
+    }
+  }
+
+  private Path layersManifestFile(String project, String jobId) {
+    return artifactDirectory(project, jobId).resolve(BundlePackager.layersManifestName(project));
+  }
+
+  /**
+   * 构建产物目录
+   */
+  public Path artifactDirectory(String project, String jobId) {
+    return config.workPath("artifacts", project, jobId);
+  }
+
+  /**
+   * 构建产物所在的目录：配置的产物目录，以及 Maven 项目每个模块的 target 目录
+   */
+  private static List<Path> outputDirectories(Path sourceDir, BuildParams buildParams) throws IOException {
+    var result = new ArrayList<Path>();
+    result.add(sourceDir.resolve(buildParams.getOutputDirectory()));
+    if (MavenDaemon.isMavenCommand(buildParams.getCommand())) {
+      for (var module : ModuleGraph.parse(sourceDir).getModules()) {
+        result.add(module.getDirectory().resolve("target"));
+      }
+    }
+    return result;
+  }
+
+  private void build(BuildJob job, Path sourceDir, BuildParams buildParams) throws IOException, InterruptedException {
+    var command = mavenRepository.toBuildCommand(job.getProject(), buildParams.getCommand(), sourceDir);
+    if (buildParams.getExecutor() == BuildExecutor.DAEMON) {
+      var daemonCommand = mavenDaemon.toDaemonCommand(job.getProject(), command, sourceDir);
+      if (daemonCommand != null) {
+        try {
+          execute(job, sourceDir, buildParams, daemonCommand);
+        } finally {
+          mavenDaemon.release(job.getProject());
+        }
+        return;
+      }
+      log.info("Job {} of project {} falls back to COLD executor", job.getId(), job.getProject());
+    }
+    execute(job, sourceDir, buildParams, command);
+  }
+
+  private void execute(
+    BuildJob job, Path sourceDir, BuildParams buildParams, List<String> command
+  ) throws IOException, InterruptedException {
+    var logFile = buildLogService.logFile(job.getId());
+    if (MavenDaemon.isMavenCommand(buildParams.getCommand())) {
+      if (buildParams.isCompileAvoidance()) {
+        var graph = ModuleGraph.parse(sourceDir);
+        if (graph.isMultiModule() && mavenVersion.isAtLeast(buildParams.getCommand(), sourceDir, 3, 9)) {
+          log.info("Building {} modules of job {} of project {} in {}", graph.size(), job.getId(), job.getProject(), sourceDir);
+          moduleBuilder.build(job.getId(), graph, command, sourceDir, Math.max(1, buildParams.getParallelism()), logFile);
+          return;
+        }
+        if (graph.isMultiModule()) {
+          log.warn("Compile avoidance of project {} requires Maven 3.9 or later, building with the reactor", job.getProject());
+        }
+      }
+      command = withThreads(command, buildParams.getParallelism());
+    }
+
+    log.info("Building job {} of project {} in {}", job.getId(), job.getProject(), sourceDir);
+    Commands.run(command, sourceDir, logFile);
+  }
+
+  /**
+   * 由 Maven reactor 以 -T 参数并行构建模块，命令中已经指定了线程数时不修改
+   */
+  private static List<String> withThreads(List<String> command, int parallelism) {
+    if (parallelism <= 1 || command.stream().anyMatch(arg -> arg.startsWith("-T") || arg.startsWith("--threads"))) {
+      return command;
+    }
+    var result = new ArrayList<>(command);
+    result.add(1, "-T");
+    result.add(2, String.valueOf(parallelism));
+    return result;
+  }
+}
@@ -0,0 +1,344 @@
+package com.hyd.jsp.cache;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.model.PackagingParams;
+import com.hyd.jsp.utils.Hashes;
+import com.hyd.jsp.utils.Jackson;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * 构建产物缓存。以源码和构建配置的摘要为键，产物文件按内容摘要存放，相同内容的文件只保存一份。
+ * <p>
+ * 目录结构：
+ * <pre>
+ * cache/index/{key}.json       键对应的产物清单
+ * cache/objects/{ab}/{hash}    产物文件内容
+ * </pre>
+ * 使用缓存时更新清单的修改时间。保存后如果缓存的文件总大小超过 jsp.build-cache-max-size，
+ * 从最久没有使用的清单开始删除，再删除不再被任何清单引用的文件。
+ */
+@Component
+@Slf4j
+public class BuildCache {
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  @Autowired
+  private FileHashCache fileHashCache;
+
+  private static final String INDEX_SUFFIX = ".json";
+
+  private static final long EVICT_INTERVAL_MILLIS = 10 * 60 * 1000;
+
+  // 读写缓存时共享，淘汰时独占，避免删除正在保存或恢复的文件
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final AtomicLong lastEvictTime = new AtomicLong();
+
+  /**
+   * 计算源码目录的摘要，忽略 .git 目录和指定的目录
+   *
+   * @param sourceDir    源码目录
+   * @param excludedDirs 忽略的目录，如构建产物目录。只忽略这些路径本身，其他位置的同名目录仍参与计算
+   *
+   * @return 摘要
+   */
+  public String hashSourceTree(Path sourceDir, Collection<Path> excludedDirs) throws IOException {
+    var rootDir = sourceDir.toAbsolutePath().normalize();
+    var excluded = new HashSet<Path>();
+    for (var dir : excludedDirs) {
+      excluded.add(dir.toAbsolutePath().normalize());
+    }
+    var files = new TreeMap<String, String>();
+
+    Files.walkFileTree(rootDir, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        if (!dir.equals(rootDir) && (dir.endsWith(".git") || excluded.contains(dir))) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        if (attrs.isRegularFile()) {
+          var relativePath = rootDir.relativize(file).toString().replace('\\', '/');
+          files.put(relativePath, fileHashCache.sha256(file, attrs));
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+
+    var digest = Hashes.sha256();
+    files.forEach((path, hash) -> digest.update((path + '\0' + hash + '\n').getBytes(StandardCharsets.UTF_8)));
+    return Hashes.toHex(digest.digest());
+  }
+
+  /**
+   * 计算源码和构建配置的摘要，作为缓存的键。服务包以项目名称命名，所以项目名称也参与计算
+   *
+   * @param project         项目名称
+   * @param sourceTreeHash  源码的摘要
+   * @param toolVersions    构建使用的 Maven、JDK 等工具的版本
+   * @param packagingParams 构建配置
+   *
+   * @return 摘要
+   */
+  public String fingerprint(String project, String sourceTreeHash, String toolVersions, PackagingParams packagingParams) {
+    return Hashes.sha256Hex(project + '\n' + sourceTreeHash + '\n' + toolVersions + '\n'
+      + Jackson.serializeCanonicalJson(packagingParams));
+  }
+
+  /**
+   * 将缓存的产物放到产物目录中
+   *
+   * @return 产物文件名列表，缓存不存在时返回 null
+   */
+  public List<String> restore(String key, Path artifactDir) throws IOException {
+    lock.readLock().lock();
+    try {
+      var entry = readEntry(key);
+      if (entry == null) {
+        return null;
+      }
+
+      Files.createDirectories(artifactDir);
+      for (var file : entry.getFiles().entrySet()) {
+        linkOrCopy(objectFile(file.getValue()), artifactDir.resolve(file.getKey()));
+      }
+      return new ArrayList<>(entry.getFiles().keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * 将产物目录中的文件保存到缓存中
+   */
+  public void store(String key, Path artifactDir, List<String> artifacts) throws IOException {
+    lock.readLock().lock();
+    try {
+      var entry = new CacheEntry();
+      for (var artifact : artifacts) {
+        entry.getFiles().put(artifact, storeObject(artifactDir.resolve(artifact)));
+      }
+      writeEntry(key, entry);
+    } finally {
+      lock.readLock().unlock();
+    }
+    evictIfNeeded();
+  }
+
+  /**
+   * 将目录下的所有文件保存到缓存中
+   *
+   * @param key        键
+   * @param directory  目录
+   * @param attributes 与文件一起保存的附加信息
+   */
+  public void storeDirectory(String key, Path directory, Map<String, String> attributes) throws IOException {
+    lock.readLock().lock();
+    try {
+      var entry = new CacheEntry();
+      entry.getAttributes().putAll(attributes);
+      try (var files = Files.walk(directory)) {
+        for (var file : (Iterable<Path>) files.sorted()::iterator) {
+          if (Files.isRegularFile(file)) {
+            entry.getFiles().put(directory.relativize(file).toString().replace('\\', '/'), storeObject(file));
+          }
+        }
+      }
+      writeEntry(key, entry);
+    } finally {
+      lock.readLock().unlock();
+    }
+    evictIfNeeded();
+  }
+
+  /**
+   * 将缓存的文件恢复到目录中。目录中的文件之后可能被修改，所以复制文件而不是使用硬链接
+   *
+   * @return 附加信息，缓存不存在时返回 null
+   */
+  public Map<String, String> restoreDirectory(String key, Path directory) throws IOException {
+    lock.readLock().lock();
+    try {
+      var entry = readEntry(key);
+      if (entry == null) {
+        return null;
+      }
+
+      for (var file : entry.getFiles().entrySet()) {
+        var target = directory.resolve(file.getKey());
+        Files.createDirectories(target.getParent());
+        Files.copy(objectFile(file.getValue()), target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return entry.getAttributes();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * 距上次检查超过 EVICT_INTERVAL_MILLIS 时检查缓存大小，超过上限时淘汰
+   */
+  private void evictIfNeeded() {
+    var now = System.currentTimeMillis();
+    var last = lastEvictTime.get();
+    if (now - last < EVICT_INTERVAL_MILLIS || !lastEvictTime.compareAndSet(last, now)) {
+      return;
+    }
+    try {
+      evict(config.getBuildCacheMaxSize().toBytes());
+    } catch (IOException | UncheckedIOException e) {
+      log.warn("Failed to evict build cache", e);
+    }
+  }
+
+  /**
+   * 按最近使用时间保留清单，直到引用的文件总大小超过 maxSize，删除其余清单和不再被引用的文件
+   *
+   * @return 删除的清单数
+   */
+  int evict(long maxSize) throws IOException {
+    var indexDir = config.workPath("cache", "index");
+    var objectsDir = config.workPath("cache", "objects");
+    if (!Files.isDirectory(indexDir)) {
+      return 0;
+    }
+
+    lock.writeLock().lock();
+    try {
+      List<Path> indexFiles;
+      try (var files = Files.list(indexDir)) {
+        indexFiles = files.filter(f -> f.getFileName().toString().endsWith(INDEX_SUFFIX)).collect(Collectors.toList());
+      }
+      var lastUsed = new HashMap<Path, FileTime>();
+      for (var indexFile : indexFiles) {
+        lastUsed.put(indexFile, Files.getLastModifiedTime(indexFile));
+      }
+      indexFiles.sort(Comparator.comparing(lastUsed::get, Comparator.reverseOrder()));
+
+      var kept = new HashSet<String>();
+      var totalSize = 0L;
+      var evicted = 0;
+      for (var indexFile : indexFiles) {
+        var hashes = Jackson.deserializeStandardJson(Files.readString(indexFile), CacheEntry.class).getFiles().values();
+        var entrySize = 0L;
+        for (var hash : new HashSet<>(hashes)) {
+          var objectFile = objectFile(hash);
+          if (!kept.contains(hash) && Files.exists(objectFile)) {
+            entrySize += Files.size(objectFile);
+          }
+        }
+        if (totalSize + entrySize > maxSize) {
+          Files.delete(indexFile);
+          evicted++;
+        } else {
+          totalSize += entrySize;
+          kept.addAll(hashes);
+        }
+      }
+      if (evicted == 0) {
+        return 0;
+      }
+
+      var deletedObjects = 0;
+      try (var files = Files.walk(objectsDir, 2)) {
+        for (var objectFile : (Iterable<Path>) files::iterator) {
+          var name = objectFile.getFileName().toString();
+          if (Files.isRegularFile(objectFile) && !name.endsWith(".tmp") && !kept.contains(name)) {
+            Files.delete(objectFile);
+            deletedObjects++;
+          }
+        }
+      }
+      log.info("Build cache evicted {} entries and {} files, {} bytes kept", evicted, deletedObjects, totalSize);
+      return evicted;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private CacheEntry readEntry(String key) throws IOException {
+    var indexFile = indexFile(key);
+    if (!Files.exists(indexFile)) {
+      return null;
+    }
+
+    var entry = Jackson.deserializeStandardJson(Files.readString(indexFile), CacheEntry.class);
+    for (var hash : entry.getFiles().values()) {
+      if (!Files.exists(objectFile(hash))) {
+        log.warn("Cache entry {} is broken, object {} is missing.", key, hash);
+        return null;
+      }
+    }
+    // 修改时间作为最近使用时间
+    Files.setLastModifiedTime(indexFile, FileTime.fromMillis(System.currentTimeMillis()));
+    return entry;
+  }
+
+  private void writeEntry(String key, CacheEntry entry) throws IOException {
+    var indexFile = indexFile(key);
+    Files.createDirectories(indexFile.getParent());
+    var tempFile = Files.createTempFile(indexFile.getParent(), key, ".tmp");
+    Files.writeString(tempFile, Jackson.serializeStandardJson(entry));
+    Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private String storeObject(Path file) throws IOException {
+    var hash = fileHashCache.sha256(file);
+    var objectFile = objectFile(hash);
+    if (!Files.exists(objectFile)) {
+      Files.createDirectories(objectFile.getParent());
+      var tempFile = Files.createTempFile(objectFile.getParent(), hash, ".tmp");
+      Files.copy(file, tempFile, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(tempFile, objectFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return hash;
+  }
+
+  private Path indexFile(String key) {
+    return config.workPath("cache", "index", key + INDEX_SUFFIX);
+  }
+
+  private Path objectFile(String hash) {
+    return config.workPath("cache", "objects", hash.substring(0, 2), hash);
+  }
+
+  // 缓存中的文件不会被修改，优先使用硬链接
+  private static void linkOrCopy(Path source, Path target) throws IOException {
+    Files.deleteIfExists(target);
+    try {
+      Files.createLink(target, source);
+    } catch (IOException | UnsupportedOperationException e) {
+      Files.copy(source, target);
+    }
+  }
+
+  @Data
+  public static class CacheEntry {
+
+    // 产物文件名 -> 内容摘要
+    private Map<String, String> files = new LinkedHashMap<>();
+
+    private Map<String, String> attributes = new LinkedHashMap<>();
+  }
+}
@@ -0,0 +1,74 @@
+package com.hyd.jsp.cache;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.utils.Hashes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 文件摘要缓存。文件的大小和修改时间不变时直接使用上次计算的摘要，不再读取文件内容。
+ * 缓存的文件数超过 jsp.file-hash-cache-size 时淘汰最久未使用的文件，
+ * 任务工作树和产物目录中的文件随任务结束不再使用，会逐渐被淘汰
+ */
+@Component
+public class FileHashCache {
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  private Map<Path, Entry> entries;
+
+  @PostConstruct
+  private void init() {
+    var maxSize = config.getFileHashCacheSize();
+    this.entries = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Path, Entry> eldest) {
+        return size() > maxSize;
+      }
+    });
+  }
+
+  public String sha256(Path file) throws IOException {
+    return sha256(file, Files.readAttributes(file, BasicFileAttributes.class));
+  }
+
+  public String sha256(Path file, BasicFileAttributes attributes) throws IOException {
+    var key = file.toAbsolutePath().normalize();
+    var size = attributes.size();
+    var lastModified = attributes.lastModifiedTime().toMillis();
+
+    var entry = entries.get(key);
+    if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+      return entry.hash;
+    }
+
+    var hash = Hashes.sha256Hex(file);
+    entries.put(key, new Entry(size, lastModified, hash));
+    return hash;
+  }
+
+  private static class Entry {
+
+    private final long size;
+
+    private final long lastModified;
+
+    private final String hash;
+
+    private Entry(long size, long lastModified, String hash) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+  }
+}
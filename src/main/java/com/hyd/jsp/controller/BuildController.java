@@ -0,0 +1,287 @@
+package com.hyd.jsp.controller;
+
+import com.hyd.jsp.archive.BlobStore;
+import com.hyd.jsp.build.PackagingPipeline;
+import com.hyd.jsp.job.BuildJobService;
+import com.hyd.jsp.log.BuildLogService;
+import com.hyd.jsp.log.LogArchive;
+import com.hyd.jsp.metrics.PackagerMetrics;
+import com.hyd.jsp.settings.SettingsRepository;
+import com.hyd.jsp.springmvc.FileDownload;
+import com.hyd.jsp.springmvc.Result;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.file.Path;
+
+@RestController
+@RequestMapping("/packaging")
+public class BuildController {
+
+  @Autowired
+  private SettingsRepository settingsRepository;
+
+  @Autowired
+  private BuildJobService buildJobService;
+
+  @Autowired
+  private BlobStore blobStore;
+
+  @Autowired
+  private PackagingPipeline packagingPipeline;
+
+  @Autowired
+  private PackagerMetrics metrics;
+
+  @Autowired
+  private BuildLogService buildLogService;
+
+  @Autowired
+  private LogArchive logArchive;
+
+  /**
+   * 发起构建，立即返回任务 ID
+   */
+  @PostMapping("build/{project}")
+  @Operation(
+    tags = {"构建任务接口"},
+    operationId = "build",
+    summary = "发起构建",
+    description = "为指定项目创建构建任务，返回任务 ID。如果相同的构建已在排队或执行，则返回该任务的 ID。" +
+      "启用构建缓存时，源码、构建配置和 Maven/JDK 版本都没有变化则直接使用缓存的构建产物，依赖外部 SNAPSHOT 的项目不使用缓存"
+  )
+  public Result build(
+    @PathVariable
+    @Parameter(description = "项目名称", example = "demo-project")
+    String project,
+    @RequestParam(value = "revision", required = false)
+    @Parameter(description = "要构建的源码版本，不指定则构建最新版本。只能用于从仓库获取源码的项目")
+    String revision,
+    @RequestParam(value = "noCache", required = false, defaultValue = "false")
+    @Parameter(description = "不使用缓存的构建产物，重新构建并更新缓存")
+    boolean noCache
+  ) {
+    var projectSettings = this.settingsRepository.findProjectSettings(project);
+    if (projectSettings == null) {
+      return Result.fail("项目 " + project + " 不存在");
+    }
+    var sourceParams = projectSettings.getPackagingParams().getSourceParams();
+    if (StringUtils.isNotBlank(revision) && StringUtils.isBlank(sourceParams.getRepository())) {
+      return Result.fail("项目 " + project + " 使用本地源码目录，不能指定 revision");
+    }
+
+    var job = this.buildJobService.submit(project, projectSettings.getPackagingParams(), revision, noCache);
+    return Result.success().set("jobId", job.getId());
+  }
+
+  /**
+   * 查询任务状态
+   */
+  @GetMapping("jobs/{id}")
+  @Operation(
+    tags = {"构建任务接口"},
+    operationId = "getJob",
+    summary = "查询任务",
+    description = "查询构建任务的状态"
+  )
+  public Result getJob(
+    @PathVariable
+    @Parameter(description = "任务 ID")
+    String id
+  ) {
+    var job = this.buildJobService.getJob(id);
+    if (job == null) {
+      return Result.fail("任务 " + id + " 不存在");
+    }
+    return Result.success().set("job", job);
+  }
+
+  /**
+   * 查看任务日志
+   */
+  @GetMapping(value = "jobs/{id}/log", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  @Operation(
+    tags = {"构建任务接口"},
+    operationId = "getJobLog",
+    summary = "查看任务日志",
+    description = "以 SSE 方式返回任务日志，执行中的任务持续返回新的日志直到任务结束。"
+      + "事件 log 为日志内容，skipped 为已被覆盖且无法从文件补读的字节数，end 表示日志结束；事件 ID 为日志的字节位置。"
+      + "指定 part 时只返回执行中的命令单独记录的输出，该命令结束后其输出追加到任务日志中"
+  )
+  public void getJobLog(
+    @PathVariable
+    @Parameter(description = "任务 ID")
+    String id,
+    @RequestParam(required = false)
+    @Parameter(description = "部分名称：模块编译为 groupId_artifactId，依赖预热为 prewarm，记录依赖为 dependencies")
+    String part,
+    @RequestHeader(value = "Last-Event-ID", required = false)
+    @Parameter(description = "断线重连时从此位置继续")
+    Long lastEventId,
+    HttpServletRequest request,
+    HttpServletResponse response
+  ) throws IOException {
+    if (!this.buildLogService.exists(id, part)) {
+      response.sendError(HttpStatus.NOT_FOUND.value());
+      return;
+    }
+    this.buildLogService.subscribe(id, part, lastEventId == null ? 0 : lastEventId, request, response);
+  }
+
+  /**
+   * 搜索历史日志
+   */
+  @GetMapping("logs/search")
+  @Operation(
+    tags = {"构建任务接口"},
+    operationId = "searchLogs",
+    summary = "搜索历史日志",
+    description = "在已结束任务的日志中搜索包含所有查询词的行，按月份从新到旧返回。"
+      + "词由字母、数字、下划线组成，不区分大小写，单个字符的词被忽略"
+  )
+  public Result searchLogs(
+    @RequestParam("q")
+    @Parameter(description = "查询内容", example = "BUILD FAILURE")
+    String q,
+    @RequestParam(value = "project", required = false)
+    @Parameter(description = "只搜索此项目的日志，不指定则搜索所有项目")
+    String project,
+    @RequestParam(value = "limit", defaultValue = "100")
+    @Parameter(description = "最多返回的行数")
+    int limit
+  ) throws IOException {
+    LogArchive.SearchResult result;
+    try {
+      result = this.logArchive.search(q, project, Math.max(1, limit));
+    } catch (IllegalArgumentException e) {
+      return Result.fail(e.getMessage());
+    }
+    return Result.success()
+      .set("matches", result.getMatches())
+      .set("searchedBlocks", result.getSearchedBlocks())
+      .set("skippedBlocks", result.getSkippedBlocks());
+  }
+
+  /**
+   * 构建统计
+   */
+  @GetMapping("stats")
+  @Operation(
+    tags = {"构建任务接口"},
+    operationId = "getStats",
+    summary = "构建统计",
+    description = "各构建阶段（source、prewarm、build、package）耗时的 p50/p95/p99、配置写入耗时、排队和执行中的任务数、缓存命中率。"
+      + "指定项目时只有该项目各阶段耗时的次数、平均值和最大值"
+  )
+  public Result getStats(
+    @RequestParam(value = "project", required = false)
+    @Parameter(description = "只统计此项目的构建阶段，不指定则统计所有项目")
+    String project
+  ) {
+    return Result.success().setAll(this.metrics.stats(project));
+  }
+
+  /**
+   * 下载构建产物
+   */
+  @GetMapping("{project}/artifacts/{buildId}")
+  @Operation(
+    tags = {"构建任务接口"},
+    operationId = "getArtifact",
+    summary = "下载构建产物",
+    description = "下载构建产物，不指定文件名时下载服务包。支持 Range 断点续传，ETag 为文件内容的 SHA-256 摘要"
+  )
+  public void getArtifact(
+    @PathVariable
+    @Parameter(description = "项目名称", example = "demo-project")
+    String project,
+    @PathVariable
+    @Parameter(description = "构建的任务 ID")
+    String buildId,
+    @RequestParam(value = "file", required = false)
+    @Parameter(description = "产物文件名")
+    String file,
+    HttpServletRequest request,
+    HttpServletResponse response
+  ) throws IOException {
+    var artifactFile = this.settingsRepository.findProjectSettings(project) == null
+      ? null : this.packagingPipeline.findArtifact(project, buildId, file);
+    if (artifactFile == null) {
+      response.sendError(HttpStatus.NOT_FOUND.value());
+      return;
+    }
+    FileDownload.send(artifactFile, this.packagingPipeline.artifactHash(project, buildId, artifactFile), request, response);
+  }
+
+  /**
+   * 下载增量包
+   */
+  @GetMapping("{project}/delta")
+  @Operation(
+    tags = {"构建任务接口"},
+    operationId = "getDelta",
+    summary = "下载增量包",
+    description = "下载两次构建的服务包之间的增量包，需要开启 archiveParams.delta。"
+      + "增量包在构建时相对上次成功的构建生成，其他已完成且开启了 delta 的构建作为起始构建时在请求时生成，之后直接使用；"
+      + "起始或目标构建没有文件清单时返回 404。"
+      + "增量包通过 java -jar java-service-packager.jar apply-delta {增量包} {目录} 应用"
+  )
+  public void getDelta(
+    @PathVariable
+    @Parameter(description = "项目名称", example = "demo-project")
+    String project,
+    @RequestParam("from")
+    @Parameter(description = "已部署的构建的任务 ID")
+    String from,
+    @RequestParam(value = "to", required = false)
+    @Parameter(description = "目标构建的任务 ID，不指定则为最近一次成功的构建")
+    String to,
+    HttpServletRequest request,
+    HttpServletResponse response
+  ) throws IOException {
+    String target = null;
+    Path deltaFile = null;
+    if (this.settingsRepository.findProjectSettings(project) != null) {
+      target = to != null ? to : this.packagingPipeline.findLatestPackage(project);
+      deltaFile = target == null ? null : this.packagingPipeline.findDelta(project, from, target);
+    }
+    if (deltaFile == null) {
+      response.sendError(HttpStatus.NOT_FOUND.value());
+      return;
+    }
+    FileDownload.send(deltaFile, this.packagingPipeline.artifactHash(project, target, deltaFile), request, response);
+  }
+
+  /**
+   * 下载分层服务包中的文件
+   */
+  @GetMapping("blobs/{hash}")
+  @Operation(
+    tags = {"构建任务接口"},
+    operationId = "getBlob",
+    summary = "下载文件",
+    description = "按内容摘要下载分层服务包中的文件"
+  )
+  public void getBlob(
+    @PathVariable
+    @Parameter(description = "文件内容的 SHA-256 摘要")
+    String hash,
+    HttpServletRequest request,
+    HttpServletResponse response
+  ) throws IOException {
+    var blobFile = this.blobStore.get(hash);
+    if (blobFile == null) {
+      response.sendError(HttpStatus.NOT_FOUND.value());
+      return;
+    }
+    FileDownload.send(blobFile, hash, request, response);
+  }
+}
@@ -1,6 +1,9 @@
 package com.hyd.jsp.controller;
 
+import com.hyd.jsp.job.BuildJobService;
 import com.hyd.jsp.model.PackagingParams;
+import com.hyd.jsp.model.ProjectSettings;
+import com.hyd.jsp.settings.SettingsBatchReader;
 import com.hyd.jsp.settings.SettingsRepository;
 import com.hyd.jsp.springmvc.Result;
 import io.swagger.v3.oas.annotations.Operation;
@@ -8,7 +11,9 @@ import io.swagger.v3.oas.annotations.Parameter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.util.LinkedHashMap;
 
 @RestController
 @RequestMapping("/packaging")
@@ -17,6 +22,31 @@ public class PackageController {
   @Autowired
   private SettingsRepository settingsRepository;
 
+  @Autowired
+  private BuildJobService buildJobService;
+
+  /**
+   * 查询项目信息
+   */
+  @GetMapping("{project}")
+  @Operation(
+    tags = {"构建配置接口" },
+    operationId = "getProjectPackagingParams",
+    summary = "查询构建配置",
+    description = "查询指定项目的构建配置"
+  )
+  public Result getProject(
+    @PathVariable
+    @Parameter(description = "项目名称", example = "demo-project")
+    String project
+  ) {
+    var projectSettings = this.settingsRepository.findProjectSettings(project);
+    if (projectSettings == null) {
+      return Result.fail("项目 " + project + " 不存在");
+    }
+    return Result.success().set("packagingParams", projectSettings.getPackagingParams());
+  }
+
   /**
    * 保存项目信息
    */
@@ -37,9 +67,56 @@ public class PackageController {
     @RequestParam(value = "others", required = false)
     @Parameter(hidden = true)
     String others
-  ) throws IOException {
+  ) {
+    try {
+      ProjectSettings.validateName(project);
+      packagingParams.validate();
+    } catch (IllegalArgumentException e) {
+      return Result.fail(e.getMessage());
+    }
     this.settingsRepository.saveProjectPackagingParams(project, packagingParams);
     this.settingsRepository.saveSettings();
     return Result.success();
   }
+
+  /**
+   * 批量保存项目信息
+   */
+  @PostMapping("batch")
+  @Operation(
+    tags = {"构建配置接口" },
+    operationId = "saveProjectPackagingParamsBatch",
+    summary = "批量保存构建配置",
+    description = "请求内容为 NDJSON，每行一条记录 {\"project\": 项目名称, \"packagingParams\": 构建配置}。" +
+      "全部记录格式正确时才保存，所有修改一次生效并一起写入配置文件。返回配置有变化的项目，build 为 true 时为这些项目发起构建"
+  )
+  public Result saveProjects(
+    HttpServletRequest request,
+    @RequestParam(value = "build", defaultValue = "false")
+    @Parameter(description = "是否为配置有变化的项目发起构建")
+    boolean build
+  ) throws IOException {
+    LinkedHashMap<String, PackagingParams> records;
+    try {
+      records = SettingsBatchReader.read(request.getInputStream());
+    } catch (IllegalArgumentException e) {
+      return Result.fail(e.getMessage());
+    }
+
+    var changed = this.settingsRepository.saveAllPackagingParams(records);
+    if (!changed.isEmpty()) {
+      this.settingsRepository.saveSettings();
+    }
+
+    var jobIds = new LinkedHashMap<String, String>();
+    if (build) {
+      for (var project : changed) {
+        jobIds.put(project, this.buildJobService.submit(project, records.get(project), null, false).getId());
+      }
+    }
+    return Result.success()
+      .set("received", records.size())
+      .set("changed", changed)
+      .set("jobIds", jobIds);
+  }
 }
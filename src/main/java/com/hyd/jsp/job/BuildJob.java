@@ -0,0 +1,81 @@
+package com.hyd.jsp.job;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.hyd.jsp.model.PackagingParams;
+import lombok.Data;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 一次构建任务。任务创建后由构建线程更新状态，其他线程只读取
+ */
+@Data
+public class BuildJob {
+
+  /**
+   * 任务 ID 的格式：创建时间加序号
+   */
+  public static final Pattern ID_PATTERN = Pattern.compile("\\d{14}-\\d{6}");
+
+  private final String id;
+
+  private final String project;
+
+  @JsonIgnore
+  private final PackagingParams packagingParams;
+
+  // 构建配置的摘要，用于判断两个任务是否完全相同
+  @JsonIgnore
+  private final String paramsKey;
+
+  // 请求构建的源码版本，为空表示最新版本
+  private final String requestedRevision;
+
+  // 是否不使用缓存的构建产物，重新构建
+  private final boolean noCache;
+
+  // 实际构建的源码版本，任务开始后才能确定
+  private volatile String revision;
+
+  // 合并到此任务的请求数量
+  private final AtomicInteger requestCount = new AtomicInteger(1);
+
+  private final Date createTime = new Date();
+
+  private volatile JobStatus status = JobStatus.QUEUED;
+
+  private volatile Date startTime;
+
+  private volatile Date finishTime;
+
+  private volatile String message;
+
+  private volatile List<String> artifacts = List.of();
+
+  // 是否直接使用了缓存的构建产物
+  private volatile boolean cacheHit;
+
+  /**
+   * 判断一个新请求能否直接使用此任务的结果：
+   * 排队中的任务尚未读取源码，只要请求的版本一致即可；
+   * 执行中的任务只有在请求指定了版本且与实际构建的版本一致时才可以。
+   * 不使用缓存的请求不能合并到使用缓存的任务
+   */
+  public boolean canMerge(String paramsKey, String requestedRevision, boolean noCache) {
+    if (!this.paramsKey.equals(paramsKey) || noCache && !this.noCache) {
+      return false;
+    }
+    switch (status) {
+      case QUEUED:
+        return Objects.equals(this.requestedRevision, requestedRevision);
+      case RUNNING:
+        return requestedRevision != null && requestedRevision.equals(this.revision);
+      default:
+        return false;
+    }
+  }
+}
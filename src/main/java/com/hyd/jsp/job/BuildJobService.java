@@ -0,0 +1,184 @@
+package com.hyd.jsp.job;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.build.PackagingPipeline;
+import com.hyd.jsp.log.BuildLogService;
+import com.hyd.jsp.metrics.PackagerMetrics;
+import com.hyd.jsp.model.PackagingParams;
+import com.hyd.jsp.utils.Hashes;
+import com.hyd.jsp.utils.Jackson;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 管理构建任务。任务在固定大小的线程池中执行，同一项目的任务依次执行，不同项目的任务并行执行
+ */
+@Component
+@Slf4j
+public class BuildJobService {
+
+  private static final DateTimeFormatter JOB_ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  @Autowired
+  private PackagingPipeline packagingPipeline;
+
+  @Autowired
+  private PackagerMetrics metrics;
+
+  @Autowired
+  private BuildLogService buildLogService;
+
+  private final Map<String, BuildJob> jobs = new ConcurrentHashMap<>();
+
+  // 每个项目排队中和执行中的任务
+  private final Map<String, ProjectQueue> projectQueues = new ConcurrentHashMap<>();
+
+  private final Queue<String> finishedJobIds = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger finishedJobCount = new AtomicInteger();
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  private final AtomicInteger queuedJobCount = new AtomicInteger();
+
+  private final AtomicInteger runningJobCount = new AtomicInteger();
+
+  private ExecutorService executor;
+
+  @PostConstruct
+  private void init() {
+    var threadCounter = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(config.getBuildWorkers(), r -> {
+      var thread = new Thread(r, "build-worker-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    metrics.registerJobGauge("queued", queuedJobCount::get);
+    metrics.registerJobGauge("running", runningJobCount::get);
+    log.info("Build job service started with {} workers.", config.getBuildWorkers());
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * 提交构建任务，立即返回。如果已有相同配置和源码版本的任务在排队或执行，则直接返回该任务
+   *
+   * @param project           项目名称
+   * @param packagingParams   构建配置
+   * @param requestedRevision 要构建的源码版本，为空表示最新版本
+   * @param noCache           是否不使用缓存的构建产物
+   *
+   * @return 新建的任务或合并到的任务
+   */
+  public BuildJob submit(String project, PackagingParams packagingParams, String requestedRevision, boolean noCache) {
+    var paramsKey = Hashes.sha256Hex(Jackson.serializeCanonicalJson(packagingParams));
+    var result = new BuildJob[1];
+    var merged = new boolean[1];
+
+    projectQueues.compute(project, (p, queue) -> {
+      queue = queue == null ? new ProjectQueue() : queue;
+
+      for (var activeJob : queue.activeJobs) {
+        if (activeJob.canMerge(paramsKey, requestedRevision, noCache)) {
+          activeJob.getRequestCount().incrementAndGet();
+          result[0] = activeJob;
+          merged[0] = true;
+          return queue;
+        }
+      }
+
+      var job = new BuildJob(nextJobId(), project, packagingParams, paramsKey, requestedRevision, noCache);
+      jobs.put(job.getId(), job);
+      queue.activeJobs.add(job);
+      queuedJobCount.incrementAndGet();
+      queue.tail = queue.tail.handleAsync((r, e) -> {
+        runJob(job);
+        return null;
+      }, executor);
+
+      result[0] = job;
+      return queue;
+    });
+
+    var job = result[0];
+    if (merged[0]) {
+      log.info("Build request of project {} merged into job {}.", project, job.getId());
+    } else {
+      log.info("Job {} of project {} submitted.", job.getId(), project);
+    }
+    return job;
+  }
+
+  public BuildJob getJob(String id) {
+    return jobs.get(id);
+  }
+
+  private void runJob(BuildJob job) {
+    queuedJobCount.decrementAndGet();
+    runningJobCount.incrementAndGet();
+    job.setStartTime(new Date());
+    job.setStatus(JobStatus.RUNNING);
+    try {
+      buildLogService.open(job.getId());
+      packagingPipeline.run(job);
+      job.setStatus(JobStatus.SUCCEEDED);
+      log.info("Job {} of project {} succeeded.", job.getId(), job.getProject());
+    } catch (Exception e) {
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      job.setMessage(e.getMessage());
+      job.setStatus(JobStatus.FAILED);
+      log.error("Job {} of project {} failed", job.getId(), job.getProject(), e);
+    } finally {
+      runningJobCount.decrementAndGet();
+      buildLogService.finish(job);
+      job.setFinishTime(new Date());
+      projectQueues.computeIfPresent(job.getProject(), (p, queue) -> {
+        queue.activeJobs.remove(job);
+        return queue.activeJobs.isEmpty() ? null : queue;
+      });
+      retire(job);
+    }
+  }
+
+  // 只在内存中保留最近结束的若干个任务
+  private void retire(BuildJob job) {
+    finishedJobIds.add(job.getId());
+    if (finishedJobCount.incrementAndGet() > config.getJobHistorySize()) {
+      var oldest = finishedJobIds.poll();
+      if (oldest != null) {
+        finishedJobCount.decrementAndGet();
+        jobs.remove(oldest);
+      }
+    }
+  }
+
+  private static class ProjectQueue {
+
+    // 最后一个任务，新任务在它结束后执行
+    private CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+
+    private final List<BuildJob> activeJobs = new ArrayList<>();
+  }
+
+  private String nextJobId() {
+    return LocalDateTime.now().format(JOB_ID_FORMAT) + "-" + String.format("%06d", sequence.incrementAndGet() % 1_000_000);
+  }
+}
@@ -0,0 +1,10 @@
+package com.hyd.jsp.job;
+
+public enum JobStatus {
+
+  QUEUED, RUNNING, SUCCEEDED, FAILED;
+
+  public boolean isFinished() {
+    return this == SUCCEEDED || this == FAILED;
+  }
+}
@@ -0,0 +1,531 @@
+package com.hyd.jsp.log;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.job.BuildJob;
+import com.hyd.jsp.utils.Commands;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 构建日志。
+ * <ul>
+ *   <li>执行中的任务，日志同时写入文件和固定大小的环形缓冲区，订阅者从缓冲区读取，已被覆盖的部分从文件补读</li>
+ *   <li>同时执行的命令单独记录的输出（部分，见 {@link LiveLog}）也可以在执行中订阅</li>
+ *   <li>任务结束后日志文件压缩为 .log.gz，缓冲区随即释放</li>
+ *   <li>订阅者通过 SSE 接收日志，事件 ID 为日志的字节位置，断线重连时从 Last-Event-ID 处继续</li>
+ * </ul>
+ * 每个订阅者每次最多读取 CHUNK_SIZE 字节，在固定大小的线程池中以非阻塞方式（Servlet WriteListener）发送，
+ * 连接不可写时不占用发送线程，可写后再继续，不影响构建命令输出的读取。
+ * 连接超过 SEND_TIMEOUT_MILLIS 一直不可写的订阅者被断开（结束其异步请求）。
+ */
+@Component
+@Slf4j
+public class BuildLogService {
+
+  private static final int CHUNK_SIZE = 32 * 1024;
+
+  private static final long POLL_INTERVAL_MILLIS = 200;
+
+  private static final long SEND_TIMEOUT_MILLIS = 10_000;
+
+  private static final String COMPRESSED_SUFFIX = ".gz";
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  @Autowired
+  private LogArchive logArchive;
+
+  // 执行中的任务的实时日志
+  private final Map<String, LiveLog> liveLogs = new ConcurrentHashMap<>();
+
+  private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+  private ExecutorService sender;
+
+  // 定时读取新的日志和检查发送超时
+  private ScheduledExecutorService scheduler;
+
+  @PostConstruct
+  private void init() {
+    var threadCounter = new AtomicInteger();
+    this.sender = Executors.newFixedThreadPool(config.getLogSenderThreads(), r -> {
+      var thread = new Thread(r, "log-sender-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      var thread = new Thread(r, "log-scheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.scheduler.scheduleWithFixedDelay(this::dropStalledSubscriptions, 1, 1, TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    this.scheduler.shutdownNow();
+    this.sender.shutdownNow();
+  }
+
+  /**
+   * 构建日志文件，任务结束后压缩为同名的 .gz 文件
+   */
+  public Path logFile(String jobId) {
+    return config.workPath("logs", jobId + ".log");
+  }
+
+  /**
+   * 单独记录的输出文件，追加到任务日志后删除
+   */
+  private Path partLogFile(String jobId, String part) {
+    return config.workPath("logs", jobId + ".log." + part);
+  }
+
+  /**
+   * 任务开始时创建日志缓冲区
+   */
+  public void open(String jobId) throws IOException {
+    var logFile = logFile(jobId);
+    Files.createDirectories(logFile.getParent());
+    var liveLog = new LiveLog(config.getLogBufferSize(), config.isLogBufferOffHeap());
+    liveLogs.put(jobId, liveLog);
+    Commands.attachLiveLog(logFile, liveLog);
+  }
+
+  /**
+   * 任务结束时释放日志缓冲区，归档并压缩日志文件
+   */
+  public void finish(BuildJob job) {
+    var jobId = job.getId();
+    var logFile = logFile(jobId);
+    Commands.detachLiveLog(logFile);
+    var liveLog = liveLogs.get(jobId);
+    if (liveLog != null) {
+      liveLog.close();
+    }
+
+    try {
+      if (Files.exists(logFile)) {
+        // 归档失败不影响压缩，日志仍可查看
+        if (config.isLogArchiveEnabled()) {
+          try {
+            logArchive.append(job.getProject(), jobId, logFile);
+          } catch (IOException | RuntimeException e) {
+            log.warn("Failed to add log of job {} to archive", jobId, e);
+          }
+        }
+        var compressedFile = compressedLogFile(jobId);
+        var tempFile = compressedFile.resolveSibling(compressedFile.getFileName() + ".tmp");
+        try (var out = new GZIPOutputStream(Files.newOutputStream(tempFile), CHUNK_SIZE)) {
+          Files.copy(logFile, out);
+        }
+        Files.move(tempFile, compressedFile);
+        Files.delete(logFile);
+      }
+    } catch (IOException e) {
+      log.warn("Failed to compress log of job {}", jobId, e);
+    } finally {
+      // 已订阅的读取方仍持有缓冲区，读完后由 GC 回收
+      liveLogs.remove(jobId);
+    }
+  }
+
+  /**
+   * 任务的日志是否存在
+   *
+   * @param jobId 任务 ID
+   * @param part  部分名称，为 null 时表示任务日志。部分只在执行中存在，结束后已追加到任务日志中
+   */
+  public boolean exists(String jobId, String part) {
+    if (!BuildJob.ID_PATTERN.matcher(jobId).matches()) {
+      return false;
+    }
+    if (part != null) {
+      var liveLog = liveLogs.get(jobId);
+      return liveLog != null && liveLog.getPart(part) != null;
+    }
+    return liveLogs.containsKey(jobId) || Files.exists(logFile(jobId)) || Files.exists(compressedLogFile(jobId));
+  }
+
+  /**
+   * 订阅任务的日志，执行中的任务持续发送新的日志，直到任务结束。
+   * 事件 log 为日志内容（只在行尾断开），skipped 为已被覆盖且无法从文件补读的字节数，end 表示日志结束
+   *
+   * @param jobId    任务 ID
+   * @param part     部分名称，为 null 时订阅任务日志
+   * @param position 开始位置，即上次收到的事件 ID
+   * @param request  请求，转为异步请求，日志发送完或订阅者断开时结束
+   * @param response 响应
+   */
+  public void subscribe(
+    String jobId, String part, long position, HttpServletRequest request, HttpServletResponse response
+  ) throws IOException {
+    response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    response.setHeader("Cache-Control", "no-cache");
+    var asyncContext = request.startAsync(request, response);
+    asyncContext.setTimeout(0);
+
+    var subscription = new Subscription(jobId, part, asyncContext, response.getOutputStream(), Math.max(0, position));
+    subscriptions.add(subscription);
+    asyncContext.addListener(subscription);
+    // 容器在可写时调用 onWritePossible 开始发送
+    response.getOutputStream().setWriteListener(subscription);
+  }
+
+  private void dropStalledSubscriptions() {
+    var now = System.nanoTime();
+    for (var subscription : subscriptions) {
+      subscription.dropIfStalled(now);
+    }
+  }
+
+  private Path compressedLogFile(String jobId) {
+    return config.workPath("logs", jobId + ".log" + COMPRESSED_SUFFIX);
+  }
+
+  private class Subscription implements Runnable, WriteListener, AsyncListener {
+
+    private final String jobId;
+
+    private final String part;
+
+    private final AsyncContext asyncContext;
+
+    private final ServletOutputStream out;
+
+    private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+    private long position;
+
+    private LogRingBuffer buffer;
+
+    // 任务已结束时从日志文件读取
+    private InputStream fileInput;
+
+    // 缓冲区中已被覆盖的内容从日志文件补读
+    private FileChannel backfillChannel;
+
+    private volatile boolean closed;
+
+    private boolean released;
+
+    // 开始等待连接可写的时间，为 0 表示没有等待，用于检查发送超时
+    private long writeBlockedNanos;
+
+    private Subscription(String jobId, String part, AsyncContext asyncContext, ServletOutputStream out, long position) {
+      this.jobId = jobId;
+      this.part = part;
+      this.asyncContext = asyncContext;
+      this.out = out;
+      this.position = position;
+      var liveLog = liveLogs.get(jobId);
+      if (liveLog != null) {
+        this.buffer = part == null ? liveLog.getBuffer() : liveLog.getPart(part);
+      }
+    }
+
+    /**
+     * 发送日志，直到暂时没有新的内容或连接暂时不可写。不可写时等容器调用 onWritePossible 后再继续
+     */
+    @Override
+    public synchronized void run() {
+      if (released) {
+        return;
+      }
+      if (closed) {
+        release();
+        return;
+      }
+      try {
+        if (!out.isReady()) {
+          waitForWritePossible();
+          return;
+        }
+        var more = buffer != null ? sendFromBuffer() : part == null && sendFromFile();
+        if (!out.isReady()) {
+          waitForWritePossible();
+          return;
+        }
+        if (more) {
+          out.flush();
+          if (!out.isReady()) {
+            waitForWritePossible();
+          } else if (buffer != null) {
+            scheduler.schedule(() -> sender.execute(this), POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+          } else {
+            sender.execute(this);
+          }
+        } else {
+          writeEvent("end", "");
+          asyncContext.complete();
+          release();
+        }
+      } catch (Exception e) {
+        log.debug("Log subscription of job {} closed: {}", jobId, e.toString());
+        asyncContext.complete();
+        release();
+      }
+    }
+
+    /**
+     * @return 是否还有内容。连接不可写时也返回 true
+     */
+    private boolean sendFromBuffer() throws IOException {
+      // 先判断是否关闭，再读取，保证关闭前写入的内容都能读到
+      var bufferClosed = buffer.isClosed();
+      while (out.isReady()) {
+        chunk.clear();
+        var start = buffer.read(position, chunk);
+        if (start > position) {
+          chunk.clear();
+          if (backfill()) {
+            continue;
+          }
+          writeEvent("skipped", start, String.valueOf(start - position));
+          position = start;
+          continue;
+        }
+        chunk.flip();
+        var sent = send(chunk, bufferClosed);
+        if (sent == 0) {
+          return !bufferClosed;
+        }
+      }
+      return true;
+    }
+
+    private boolean sendFromFile() throws IOException {
+      if (fileInput == null) {
+        var logFile = logFile(jobId);
+        var compressedFile = compressedLogFile(jobId);
+        if (Files.exists(compressedFile)) {
+          fileInput = new GZIPInputStream(Files.newInputStream(compressedFile), CHUNK_SIZE);
+        } else if (Files.exists(logFile)) {
+          fileInput = Files.newInputStream(logFile);
+        } else {
+          return false;
+        }
+        skip(fileInput, position);
+      }
+
+      // chunk 中可能留有上次未发送的半行或不完整的字符
+      var read = fileInput.readNBytes(chunk.array(), chunk.position(), chunk.remaining());
+      chunk.position(chunk.position() + read);
+      chunk.flip();
+      var eof = chunk.limit() < CHUNK_SIZE;
+      var sent = send(chunk, eof);
+      chunk.position(sent);
+      chunk.compact();
+      return !eof || chunk.position() > 0;
+    }
+
+    /**
+     * 发送读取的内容，发送后更新位置。不在行尾断开时退回到完整的 UTF-8 字符处，避免一个字符分在两个事件中
+     *
+     * @param data 读取的内容
+     * @param all  是否全部发送。为 false 时只发送完整的行，但读满一整块仍没有换行时全部发送
+     *
+     * @return 发送的字节数
+     */
+    private int send(ByteBuffer data, boolean all) throws IOException {
+      var length = data.limit();
+      if (!all) {
+        while (length > 0 && data.get(length - 1) != '\n') {
+          length--;
+        }
+        if (length == 0 && data.limit() == CHUNK_SIZE) {
+          length = completeUtf8Length(data, CHUNK_SIZE);
+        }
+      } else if (length > 0 && data.get(length - 1) != '\n') {
+        // 只剩不完整的字符时（日志本身不完整）也全部发送，否则永远发送不完
+        var complete = completeUtf8Length(data, length);
+        length = complete > 0 ? complete : length;
+      }
+      if (length == 0) {
+        return 0;
+      }
+
+      var text = new String(data.array(), 0, length, StandardCharsets.UTF_8);
+      writeEvent("log", position + length, text);
+      position += length;
+      return length;
+    }
+
+    /**
+     * data 的前 length 个字节中以完整的 UTF-8 字符结尾的长度
+     */
+    private int completeUtf8Length(ByteBuffer data, int length) {
+      // 从末尾向前找最后一个字符的首字节，UTF-8 字符最长 4 字节
+      for (var i = length - 1; i >= Math.max(0, length - 4); i--) {
+        var b = data.get(i) & 0xff;
+        if ((b & 0xc0) != 0x80) {
+          var charLength = b < 0x80 ? 1 : b >= 0xf0 ? 4 : b >= 0xe0 ? 3 : b >= 0xc0 ? 2 : 1;
+          return i + charLength <= length ? length : i;
+        }
+      }
+      return length;
+    }
+
+    /**
+     * 从日志文件读取并发送缓冲区中已被覆盖的内容。文件先于缓冲区写入，其中一定有这些内容
+     *
+     * @return 是否读取并发送了内容
+     */
+    private boolean backfill() throws IOException {
+      if (backfillChannel == null) {
+        var file = part == null ? logFile(jobId) : partLogFile(jobId, part);
+        try {
+          backfillChannel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+          return false;
+        }
+      }
+      while (chunk.hasRemaining()) {
+        if (backfillChannel.read(chunk, position + chunk.position()) < 0) {
+          break;
+        }
+      }
+      chunk.flip();
+      if (chunk.limit() == 0) {
+        return false;
+      }
+      // 文件中最后一行可能还没写完，没有完整的行时全部发送
+      if (send(chunk, false) == 0) {
+        send(chunk, true);
+      }
+      return true;
+    }
+
+    private void writeEvent(String name, String data) throws IOException {
+      writeEvent(name, position, data);
+    }
+
+    /**
+     * 写入一个 SSE 事件，每行作为一个 data 字段，客户端收到时以换行连接。只在连接可写时调用
+     */
+    private void writeEvent(String name, long id, String data) throws IOException {
+      var event = new StringBuilder("event:").append(name).append("\nid:").append(id).append('\n');
+      for (var line : data.split("\r?\n", -1)) {
+        event.append("data:").append(line).append('\n');
+      }
+      event.append('\n');
+      out.write(event.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void waitForWritePossible() {
+      if (writeBlockedNanos == 0) {
+        writeBlockedNanos = System.nanoTime();
+      }
+    }
+
+    /**
+     * 连接超时一直不可写时结束异步请求，断开订阅者
+     */
+    private synchronized void dropIfStalled(long now) {
+      if (!released && writeBlockedNanos != 0
+        && now - writeBlockedNanos > TimeUnit.MILLISECONDS.toNanos(SEND_TIMEOUT_MILLIS)) {
+        log.info("Log subscriber of job {} dropped, connection not writable for {} ms", jobId, SEND_TIMEOUT_MILLIS);
+        asyncContext.complete();
+        release();
+      }
+    }
+
+    private void skip(InputStream in, long count) throws IOException {
+      while (count > 0) {
+        var skipped = in.skip(count);
+        if (skipped <= 0) {
+          return;
+        }
+        count -= skipped;
+      }
+    }
+
+    @Override
+    public void onWritePossible() {
+      synchronized (this) {
+        writeBlockedNanos = 0;
+      }
+      sender.execute(this);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      cancel();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      cancel();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      cancel();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      cancel();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    // 连接断开或请求结束时由容器线程调用，资源在发送线程中释放
+    private void cancel() {
+      closed = true;
+      sender.execute(this);
+    }
+
+    private void release() {
+      released = true;
+      closed = true;
+      subscriptions.remove(this);
+      buffer = null;
+      for (var closeable : new Closeable[]{fileInput, backfillChannel}) {
+        if (closeable != null) {
+          try {
+            closeable.close();
+          } catch (IOException e) {
+            // ignore
+          }
+        }
+      }
+    }
+  }
+}
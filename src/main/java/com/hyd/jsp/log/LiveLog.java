@@ -0,0 +1,80 @@
+package com.hyd.jsp.log;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 执行中的任务的实时日志，包括任务日志的缓冲区和各个单独记录的输出（部分）的缓冲区。
+ * <p>
+ * 同时执行的命令（如模块编译、依赖预热）的输出先写入 "日志文件名.部分名称" 文件，结束后整体追加到任务日志中。
+ * 部分的缓冲区在命令开始输出时创建，追加到任务日志后关闭。
+ */
+public class LiveLog {
+
+  /**
+   * 部分名称，即单独记录的输出文件名中日志文件名之后的部分
+   */
+  public static final Pattern PART_NAME_PATTERN = Pattern.compile("[\\w-]+(\\.[\\w-]+)*");
+
+  private final int bufferSize;
+
+  private final boolean offHeap;
+
+  private final LogRingBuffer buffer;
+
+  private final Map<String, LogRingBuffer> parts = new ConcurrentHashMap<>();
+
+  private volatile boolean closed;
+
+  /**
+   * @param bufferSize 每个缓冲区的大小（字节）
+   * @param offHeap    缓冲区是否使用堆外内存
+   */
+  public LiveLog(int bufferSize, boolean offHeap) {
+    this.bufferSize = bufferSize;
+    this.offHeap = offHeap;
+    this.buffer = new LogRingBuffer(bufferSize, offHeap);
+  }
+
+  public LogRingBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * 部分的缓冲区，不存在时创建
+   *
+   * @return 缓冲区，名称不合法或日志已关闭时返回 null
+   */
+  public LogRingBuffer openPart(String name) {
+    if (closed || !PART_NAME_PATTERN.matcher(name).matches()) {
+      return null;
+    }
+    return parts.computeIfAbsent(name, n -> new LogRingBuffer(bufferSize, offHeap));
+  }
+
+  /**
+   * 部分的缓冲区
+   *
+   * @return 缓冲区，部分没有开始或已经关闭时返回 null
+   */
+  public LogRingBuffer getPart(String name) {
+    return parts.get(name);
+  }
+
+  /**
+   * 关闭部分的缓冲区，已订阅的读取方读完后结束
+   */
+  public void closePart(String name) {
+    var part = parts.remove(name);
+    if (part != null) {
+      part.close();
+    }
+  }
+
+  public void close() {
+    closed = true;
+    buffer.close();
+    parts.keySet().forEach(this::closePart);
+  }
+}
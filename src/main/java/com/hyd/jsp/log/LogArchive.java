@@ -0,0 +1,517 @@
+package com.hyd.jsp.log;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 构建日志归档，用于搜索历史日志。
+ * <p>
+ * 日志按任务 ID 中的月份分区，每个分区两个文件：
+ * <ul>
+ *   <li>{yyyyMM}.blocks：日志按行切分为约 BLOCK_SIZE 大小的块，每块单独压缩后依次追加</li>
+ *   <li>{yyyyMM}.index：每块一条记录，包括块的位置、所属任务、第一行的行号，以及块中所有词的布隆过滤器</li>
+ * </ul>
+ * 搜索时先用布隆过滤器排除不包含所有查询词的块，只解压剩下的块。两个文件都通过内存映射读取。
+ * 写入中断时 .index 末尾可能留有不完整的记录，搜索时忽略，下次归档前截掉。
+ * <p>
+ * 词由字母、数字、下划线组成，不区分大小写，至少两个字符。
+ */
+@Component
+@Slf4j
+public class LogArchive {
+
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  private static final int MIN_TOKEN_LENGTH = 2;
+
+  // 布隆过滤器每个词占用的位数和哈希函数个数，误判率约 1%
+  private static final int BLOOM_BITS_PER_TOKEN = 10;
+
+  private static final int BLOOM_HASHES = 7;
+
+  private static final int MAX_BLOOM_WORDS = 8 * 1024;
+
+  private static final int MAX_LINE_LENGTH = 1000;
+
+  private static final String BLOCKS_SUFFIX = ".blocks";
+
+  private static final String INDEX_SUFFIX = ".index";
+
+  // 索引记录中布隆过滤器之前的部分：块位置、压缩后长度、原始长度、第一行行号、两个字符串的长度、布隆过滤器长度
+  private static final int MIN_RECORD_LENGTH = Long.BYTES + Integer.BYTES * 3 + Short.BYTES * 2 + Integer.BYTES;
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  // 写入时独占，搜索时只在确定文件大小时共享
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * 归档任务日志
+   *
+   * @param project 项目名称
+   * @param jobId   任务 ID
+   * @param logFile 日志文件
+   */
+  public void append(String project, String jobId, Path logFile) throws IOException {
+    var partition = jobId.substring(0, 6);
+    var blocksFile = archivePath(partition + BLOCKS_SUFFIX);
+    var indexFile = archivePath(partition + INDEX_SUFFIX);
+    Files.createDirectories(blocksFile.getParent());
+
+    lock.writeLock().lock();
+    try {
+      truncateIncompleteRecord(indexFile);
+      try (var blocks = FileChannel.open(blocksFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+           var index = new DataOutputStream(new BufferedOutputStream(
+             Files.newOutputStream(indexFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+           var reader = new BufferedReader(new InputStreamReader(Files.newInputStream(logFile), StandardCharsets.UTF_8));
+           var writer = new BlockWriter(project, jobId, blocks, index)) {
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+          writer.addLine(line);
+        }
+        writer.flush();
+        index.flush();
+        log.debug("Log of job {} archived in {} blocks", jobId, writer.blockCount);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * 截掉索引末尾不完整的记录，避免之后追加的记录无法读取
+   */
+  private static void truncateIncompleteRecord(Path indexFile) throws IOException {
+    if (!Files.exists(indexFile)) {
+      return;
+    }
+    try (var index = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      var size = index.size();
+      var lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+      long position = 0;
+      while (position + Integer.BYTES <= size) {
+        lengthBuffer.clear();
+        while (lengthBuffer.hasRemaining()) {
+          index.read(lengthBuffer, position + lengthBuffer.position());
+        }
+        var recordLength = lengthBuffer.getInt(0);
+        if (!isCompleteRecord(recordLength, position, size)) {
+          break;
+        }
+        position += Integer.BYTES + recordLength;
+      }
+      if (position < size) {
+        log.warn("Truncating incomplete record at {} of log archive index {}", position, indexFile);
+        index.truncate(position);
+      }
+    }
+  }
+
+  /**
+   * 位于 position 的索引记录是否完整写入
+   */
+  private static boolean isCompleteRecord(int recordLength, long position, long indexSize) {
+    return recordLength >= MIN_RECORD_LENGTH && position + Integer.BYTES + recordLength <= indexSize;
+  }
+
+  /**
+   * 搜索包含所有查询词的行，按月份从新到旧
+   *
+   * @param query   查询内容
+   * @param project 只搜索此项目，为空表示所有项目
+   * @param limit   最多返回的行数
+   */
+  public SearchResult search(String query, String project, int limit) throws IOException {
+    var queryTokens = new LinkedHashSet<String>();
+    tokenize(query, queryTokens::add);
+    if (queryTokens.isEmpty()) {
+      throw new IllegalArgumentException("查询内容中没有可搜索的词");
+    }
+
+    var result = new SearchResult();
+    var archiveDir = archivePath("");
+    if (!Files.isDirectory(archiveDir)) {
+      return result;
+    }
+
+    List<String> partitions;
+    try (var files = Files.list(archiveDir)) {
+      partitions = files.map(f -> f.getFileName().toString())
+        .filter(f -> f.endsWith(INDEX_SUFFIX))
+        .map(f -> f.substring(0, f.length() - INDEX_SUFFIX.length()))
+        .sorted(Comparator.reverseOrder())
+        .collect(Collectors.toList());
+    }
+
+    var inflater = new Inflater(true);
+    try {
+      for (var partition : partitions) {
+        if (result.matches.size() >= limit) {
+          break;
+        }
+        searchPartition(partition, queryTokens, project, limit, inflater, result);
+      }
+    } finally {
+      inflater.end();
+    }
+    return result;
+  }
+
+  private void searchPartition(
+    String partition, Set<String> queryTokens, String project, int limit, Inflater inflater, SearchResult result
+  ) throws IOException {
+    var queryHashes = queryTokens.stream().mapToLong(LogArchive::hash).toArray();
+    try (var indexChannel = FileChannel.open(archivePath(partition + INDEX_SUFFIX));
+         var blocksChannel = FileChannel.open(archivePath(partition + BLOCKS_SUFFIX))) {
+
+      // 只读取已完整写入的部分
+      long indexSize;
+      long blocksSize;
+      lock.readLock().lock();
+      try {
+        indexSize = indexChannel.size();
+        blocksSize = blocksChannel.size();
+      } finally {
+        lock.readLock().unlock();
+      }
+
+      var index = new MappedFile(indexChannel, indexSize);
+      var blocks = new MappedFile(blocksChannel, blocksSize);
+      var raw = new byte[BLOCK_SIZE * 2];
+      long position = 0;
+      while (position + Integer.BYTES <= indexSize && result.matches.size() < limit) {
+        var recordLength = index.slice(position, Integer.BYTES).getInt();
+        if (!isCompleteRecord(recordLength, position, indexSize)) {
+          // 写入中断留下的不完整记录，之后没有完整的记录
+          log.warn("Incomplete record at {} of log archive index {}", position, partition + INDEX_SUFFIX);
+          break;
+        }
+        var record = index.slice(position + Integer.BYTES, recordLength);
+        position += Integer.BYTES + recordLength;
+
+        var blockOffset = record.getLong();
+        var compressedLength = record.getInt();
+        var rawLength = record.getInt();
+        var firstLine = record.getInt();
+        var recordProject = readString(record);
+        var jobId = readString(record);
+        var bloomWords = record.getInt();
+        var bloom = record.slice().asLongBuffer();
+        bloom.limit(bloomWords);
+
+        if (project != null && !project.equals(recordProject)) {
+          continue;
+        }
+        if (!mightContainAll(bloom, queryHashes)) {
+          result.skippedBlocks++;
+          continue;
+        }
+
+        result.searchedBlocks++;
+        if (raw.length < rawLength) {
+          raw = new byte[rawLength];
+        }
+        inflater.reset();
+        inflater.setInput(blocks.slice(blockOffset, compressedLength));
+        try {
+          var inflated = 0;
+          while (inflated < rawLength && !inflater.finished() && !inflater.needsInput()) {
+            inflated += inflater.inflate(raw, inflated, rawLength - inflated);
+          }
+          if (inflated != rawLength) {
+            throw new DataFormatException("Expected " + rawLength + " bytes, got " + inflated);
+          }
+        } catch (DataFormatException e) {
+          throw new IOException("Corrupted log block of job " + jobId, e);
+        }
+
+        var text = new String(raw, 0, rawLength, StandardCharsets.UTF_8);
+        var lineNumber = firstLine;
+        for (var line : text.split("\n", -1)) {
+          lineNumber++;
+          if (matches(line, queryTokens)) {
+            result.matches.add(new Match(recordProject, jobId, lineNumber,
+              line.length() > MAX_LINE_LENGTH ? line.substring(0, MAX_LINE_LENGTH) : line));
+            if (result.matches.size() >= limit) {
+              break;
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean matches(String line, Set<String> queryTokens) {
+    var lower = line.toLowerCase(Locale.ROOT);
+    for (var token : queryTokens) {
+      if (!lower.contains(token)) {
+        return false;
+      }
+    }
+    // 包含所有查询词的子串，再确认是完整的词
+    var lineTokens = new HashSet<String>();
+    tokenize(line, lineTokens::add);
+    return lineTokens.containsAll(queryTokens);
+  }
+
+  private Path archivePath(String fileName) {
+    return config.workPath("log-archive", fileName);
+  }
+
+  /**
+   * 拆分出文本中的词，转为小写
+   */
+  static void tokenize(String text, Consumer<String> consumer) {
+    var start = -1;
+    for (var i = 0; i <= text.length(); i++) {
+      var tokenChar = i < text.length() && isTokenChar(text.charAt(i));
+      if (tokenChar && start < 0) {
+        start = i;
+      } else if (!tokenChar && start >= 0) {
+        if (i - start >= MIN_TOKEN_LENGTH) {
+          consumer.accept(text.substring(start, i).toLowerCase(Locale.ROOT));
+        }
+        start = -1;
+      }
+    }
+  }
+
+  private static boolean isTokenChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  // 64 位 FNV-1a，高低 32 位作为两个独立的哈希值
+  private static long hash(String token) {
+    var hash = 0xcbf29ce484222325L;
+    for (var i = 0; i < token.length(); i++) {
+      hash ^= token.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  private static void addToBloom(long[] bloom, long hash) {
+    var bits = bloom.length * 64L;
+    var h1 = (int) hash;
+    var h2 = (int) (hash >>> 32);
+    for (var i = 0; i < BLOOM_HASHES; i++) {
+      var bit = Math.floorMod(h1 + i * h2, bits);
+      bloom[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  private static boolean mightContainAll(LongBuffer bloom, long[] hashes) {
+    var bits = bloom.limit() * 64L;
+    for (var hash : hashes) {
+      var h1 = (int) hash;
+      var h2 = (int) (hash >>> 32);
+      for (var i = 0; i < BLOOM_HASHES; i++) {
+        var bit = Math.floorMod(h1 + i * h2, bits);
+        if ((bloom.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    var bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeShort(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    var bytes = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * 把日志按行切分为块，压缩后写入
+   */
+  private static class BlockWriter implements Closeable {
+
+    private final String project;
+
+    private final String jobId;
+
+    private final FileChannel blocks;
+
+    private final DataOutputStream index;
+
+    private final ByteArrayOutputStream raw = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+
+    private final Set<String> tokens = new HashSet<>();
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private final byte[] compressBuffer = new byte[BLOCK_SIZE];
+
+    private int lineCount;
+
+    private int blockFirstLine;
+
+    private int blockCount;
+
+    private BlockWriter(String project, String jobId, FileChannel blocks, DataOutputStream index) {
+      this.project = project;
+      this.jobId = jobId;
+      this.blocks = blocks;
+      this.index = index;
+    }
+
+    private void addLine(String line) throws IOException {
+      if (raw.size() > 0) {
+        raw.write('\n');
+      }
+      raw.write(line.getBytes(StandardCharsets.UTF_8));
+      tokenize(line, tokens::add);
+      lineCount++;
+      if (raw.size() >= BLOCK_SIZE) {
+        flush();
+      }
+    }
+
+    private void flush() throws IOException {
+      if (lineCount == blockFirstLine) {
+        return;
+      }
+
+      var blockOffset = blocks.size();
+      deflater.reset();
+      deflater.setInput(raw.toByteArray());
+      deflater.finish();
+      var compressedLength = 0;
+      while (!deflater.finished()) {
+        var length = deflater.deflate(compressBuffer);
+        var buffer = ByteBuffer.wrap(compressBuffer, 0, length);
+        while (buffer.hasRemaining()) {
+          blocks.write(buffer);
+        }
+        compressedLength += length;
+      }
+
+      var bloomWords = (int) Math.min(MAX_BLOOM_WORDS, Math.max(1, ((long) tokens.size() * BLOOM_BITS_PER_TOKEN + 63) / 64));
+      var bloom = new long[bloomWords];
+      for (var token : tokens) {
+        addToBloom(bloom, hash(token));
+      }
+
+      var record = new ByteArrayOutputStream();
+      var out = new DataOutputStream(record);
+      out.writeLong(blockOffset);
+      out.writeInt(compressedLength);
+      out.writeInt(raw.size());
+      out.writeInt(blockFirstLine);
+      writeString(out, project);
+      writeString(out, jobId);
+      out.writeInt(bloomWords);
+      for (var word : bloom) {
+        out.writeLong(word);
+      }
+      index.writeInt(record.size());
+      record.writeTo(index);
+
+      blockCount++;
+      blockFirstLine = lineCount;
+      raw.reset();
+      tokens.clear();
+    }
+
+    @Override
+    public void close() {
+      deflater.end();
+    }
+  }
+
+  /**
+   * 分段内存映射的只读文件，避免单次映射超过 2GB
+   */
+  private static class MappedFile {
+
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private static final long WINDOW_OVERLAP = 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private long windowStart = -1;
+
+    private MappedByteBuffer window;
+
+    private MappedFile(FileChannel channel, long size) {
+      this.channel = channel;
+      this.size = size;
+    }
+
+    private ByteBuffer slice(long offset, int length) throws IOException {
+      if (offset < 0 || offset + length > size) {
+        throw new EOFException("Offset " + offset + " exceeds archive size " + size);
+      }
+
+      // 窗口之间有重叠，超过重叠部分的大块单独映射
+      if (length > WINDOW_OVERLAP) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+      }
+      var start = offset / WINDOW_SIZE * WINDOW_SIZE;
+      if (start != windowStart) {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE + WINDOW_OVERLAP, size - start));
+        windowStart = start;
+      }
+      var slice = window.duplicate();
+      slice.position((int) (offset - start)).limit((int) (offset - start + length));
+      return slice.slice();
+    }
+  }
+
+  @Data
+  public static class Match {
+
+    private final String project;
+
+    private final String jobId;
+
+    private final int line;
+
+    private final String text;
+  }
+
+  @Data
+  public static class SearchResult {
+
+    private final List<Match> matches = new ArrayList<>();
+
+    // 解压搜索的块数
+    private int searchedBlocks;
+
+    // 通过索引排除的块数
+    private int skippedBlocks;
+  }
+}
@@ -0,0 +1,92 @@
+package com.hyd.jsp.log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 固定大小的日志环形缓冲区，保留最近写入的内容。写入总是覆盖最旧的内容，不会阻塞；
+ * 读取方通过写入位置（从 0 开始的字节数）跟踪进度，落后太多时跳过已被覆盖的部分。
+ */
+public class LogRingBuffer {
+
+  private final ByteBuffer buffer;
+
+  private final int capacity;
+
+  // 累计写入的字节数
+  private long position;
+
+  private volatile boolean closed;
+
+  /**
+   * @param capacity 缓冲区大小（字节）
+   * @param offHeap  是否使用堆外内存
+   */
+  public LogRingBuffer(int capacity, boolean offHeap) {
+    this.capacity = capacity;
+    this.buffer = offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  public void write(byte[] bytes, int offset, int length) {
+    // 超过缓冲区大小时只保留最后的部分
+    var skipped = Math.max(0, length - capacity);
+    offset += skipped;
+    length -= skipped;
+
+    synchronized (this) {
+      position += skipped;
+      var index = (int) (position % capacity);
+      var first = Math.min(length, capacity - index);
+      buffer.position(index);
+      buffer.put(bytes, offset, first);
+      buffer.position(0);
+      buffer.put(bytes, offset + first, length - first);
+      position += length;
+    }
+  }
+
+  /**
+   * 读取从指定位置开始的内容
+   *
+   * @param from   开始位置
+   * @param target 存放读取的内容
+   *
+   * @return 读取的内容实际开始的位置。from 处的内容已被覆盖时从缓冲区中最旧的内容开始读取
+   */
+  public synchronized long read(long from, ByteBuffer target) {
+    var start = Math.max(from, getStartPosition());
+    var length = (int) Math.min(target.remaining(), position - start);
+    var index = (int) (start % capacity);
+    var first = Math.min(length, capacity - index);
+    var source = buffer.duplicate();
+    source.limit(index + first).position(index);
+    target.put(source);
+    source.limit(length - first).position(0);
+    target.put(source);
+    return start;
+  }
+
+  /**
+   * 缓冲区中最旧的内容的位置
+   */
+  public synchronized long getStartPosition() {
+    return Math.max(0, position - capacity);
+  }
+
+  /**
+   * 写入结束的位置
+   */
+  public synchronized long getPosition() {
+    return position;
+  }
+
+  /**
+   * 标记为不再写入
+   */
+  public void close() {
+    this.closed = true;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+}
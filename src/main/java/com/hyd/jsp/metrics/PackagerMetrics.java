@@ -0,0 +1,168 @@
+package com.hyd.jsp.metrics;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 构建过程的度量指标，通过 Actuator（/actuator/metrics）和 /packaging/stats 查看。
+ * <ul>
+ *   <li>jsp.phase：各构建阶段的耗时，按阶段区分，计算 p50/p95/p99</li>
+ *   <li>jsp.phase.project：各项目各构建阶段的耗时，只有次数、平均值和最大值。项目数不受限制，不为每个项目计算百分位数</li>
+ *   <li>jsp.settings.persist：配置写入文件的耗时</li>
+ *   <li>jsp.cache：缓存命中和未命中的次数，按缓存类型区分</li>
+ *   <li>jsp.jobs：排队中和执行中的任务数</li>
+ * </ul>
+ * 百分位数由 Micrometer 基于 HdrHistogram 在本地计算，统计最近 metricsWindow 时间内的数据。
+ */
+@Component
+public class PackagerMetrics {
+
+  // 准备源码
+  public static final String PHASE_SOURCE = "source";
+
+  // 后台预先下载依赖，与构建同时进行，不计入其他阶段
+  public static final String PHASE_PREWARM = "prewarm";
+
+  // 执行整个构建命令，包括解析依赖、编译、测试和构建工具自身的打包
+  public static final String PHASE_BUILD = "build";
+
+  // 生成服务包
+  public static final String PHASE_PACKAGE = "package";
+
+  public static final String CACHE_BUILD = "build";
+
+  public static final String CACHE_COMPILE = "compile";
+
+  private static final String PHASE_TIMER = "jsp.phase";
+
+  private static final String PROJECT_PHASE_TIMER = "jsp.phase.project";
+
+  private static final String SETTINGS_TIMER = "jsp.settings.persist";
+
+  private static final String CACHE_COUNTER = "jsp.cache";
+
+  private static final String JOBS_GAUGE = "jsp.jobs";
+
+  private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+  @Autowired
+  private MeterRegistry registry;
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  /**
+   * 记录构建阶段的耗时
+   *
+   * @param phase      阶段
+   * @param project    项目名称
+   * @param startNanos 阶段开始时 {@link System#nanoTime()} 的值
+   */
+  public void recordPhase(String phase, String project, long startNanos) {
+    var nanos = System.nanoTime() - startNanos;
+    timer(PHASE_TIMER, "phase", phase).record(nanos, TimeUnit.NANOSECONDS);
+    Timer.builder(PROJECT_PHASE_TIMER)
+      .tags("phase", phase, "project", project)
+      .distributionStatisticExpiry(config.getMetricsWindow())
+      .register(registry)
+      .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * 记录配置写入文件的耗时
+   */
+  public void recordSettingsPersist(long startNanos) {
+    timer(SETTINGS_TIMER).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * 记录缓存是否命中
+   */
+  public void recordCache(String cache, boolean hit) {
+    Counter.builder(CACHE_COUNTER).tag("cache", cache).tag("result", hit ? "hit" : "miss")
+      .register(registry).increment();
+  }
+
+  /**
+   * 注册任务数量指标
+   *
+   * @param status 任务状态
+   * @param count  获取数量的方法
+   */
+  public void registerJobGauge(String status, Supplier<Number> count) {
+    Gauge.builder(JOBS_GAUGE, count).tag("status", status).register(registry);
+  }
+
+  /**
+   * 汇总指标
+   *
+   * @param project 只汇总此项目的构建阶段（没有百分位数），为 null 时汇总所有项目
+   */
+  public Map<String, Object> stats(String project) {
+    // 阶段 -> 统计
+    var phases = new TreeMap<String, Map<String, Object>>();
+    if (project == null) {
+      for (var timer : registry.find(PHASE_TIMER).timers()) {
+        phases.put(timer.getId().getTag("phase"), summarize(timer));
+      }
+    } else {
+      for (var timer : registry.find(PROJECT_PHASE_TIMER).tag("project", project).timers()) {
+        phases.put(timer.getId().getTag("phase"), summarize(timer));
+      }
+    }
+
+    var jobs = new LinkedHashMap<String, Object>();
+    for (var gauge : registry.find(JOBS_GAUGE).gauges()) {
+      jobs.put(gauge.getId().getTag("status"), (long) gauge.value());
+    }
+
+    var caches = new TreeMap<String, Map<String, Object>>();
+    for (var counter : registry.find(CACHE_COUNTER).counters()) {
+      var cache = caches.computeIfAbsent(counter.getId().getTag("cache"), c -> new LinkedHashMap<>());
+      cache.put("hit".equals(counter.getId().getTag("result")) ? "hits" : "misses", (long) counter.count());
+    }
+    for (var cache : caches.values()) {
+      var hits = (long) cache.getOrDefault("hits", 0L);
+      var misses = (long) cache.getOrDefault("misses", 0L);
+      cache.put("hitRate", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+    }
+
+    var stats = new LinkedHashMap<String, Object>();
+    stats.put("phases", phases);
+    stats.put("settingsPersist", summarize(timer(SETTINGS_TIMER)));
+    stats.put("jobs", jobs);
+    stats.put("caches", caches);
+    return stats;
+  }
+
+  private Map<String, Object> summarize(Timer timer) {
+    var snapshot = timer.takeSnapshot();
+    var summary = new LinkedHashMap<String, Object>();
+    summary.put("count", snapshot.count());
+    summary.put("meanMillis", snapshot.mean(TimeUnit.MILLISECONDS));
+    for (var percentile : snapshot.percentileValues()) {
+      summary.put("p" + Math.round(percentile.percentile() * 100) + "Millis", percentile.value(TimeUnit.MILLISECONDS));
+    }
+    summary.put("maxMillis", snapshot.max(TimeUnit.MILLISECONDS));
+    return summary;
+  }
+
+  private Timer timer(String name, String... tags) {
+    return Timer.builder(name)
+      .tags(tags)
+      .publishPercentiles(PERCENTILES)
+      .distributionStatisticExpiry(config.getMetricsWindow())
+      .register(registry);
+  }
+}
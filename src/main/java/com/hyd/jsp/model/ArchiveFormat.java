@@ -0,0 +1,23 @@
+package com.hyd.jsp.model;
+
+public enum ArchiveFormat {
+
+  /**
+   * 不打包，只复制构建产物目录下的 jar 文件
+   */
+  NONE(""),
+
+  ZIP(".zip"),
+
+  TAR_GZ(".tar.gz");
+
+  private final String extension;
+
+  ArchiveFormat(String extension) {
+    this.extension = extension;
+  }
+
+  public String getExtension() {
+    return extension;
+  }
+}
@@ -0,0 +1,52 @@
+package com.hyd.jsp.model;
+
+import lombok.Data;
+
+@Data
+public class ArchiveParams {
+
+  /**
+   * 打包格式，默认只复制构建产物目录下的 jar 文件
+   */
+  private ArchiveFormat format = ArchiveFormat.NONE;
+
+  /**
+   * 压缩级别，0-9
+   */
+  private int compressionLevel = 6;
+
+  /**
+   * 打包时最多同时使用的压缩线程数，0 表示不单独限制。所有任务共用的线程数由 jsp.archive-threads 限制
+   */
+  private int threads = 0;
+
+  /**
+   * 是否生成分层服务包：文件按依赖、快照依赖、应用分为三层保存在所有项目共享的存储中，
+   * 产物只有一个引用这些文件的清单，此时忽略 format
+   */
+  private boolean layered = false;
+
+  /**
+   * 是否生成增量包：记录服务包的文件清单，并生成相对于上一次成功构建的增量包，只包含变化的文件
+   */
+  private boolean delta = false;
+
+  /**
+   * 启动脚本所在目录，相对于源码目录，存在时打包到 bin 目录下
+   */
+  private String scriptsDirectory = "bin";
+
+  /**
+   * 检查参数
+   *
+   * @throws IllegalArgumentException 参数不正确
+   */
+  public void validate() {
+    if (compressionLevel < 0 || compressionLevel > 9) {
+      throw new IllegalArgumentException("archiveParams.compressionLevel 必须在 0 到 9 之间：" + compressionLevel);
+    }
+    if (threads < 0) {
+      throw new IllegalArgumentException("archiveParams.threads 不能小于 0：" + threads);
+    }
+  }
+}
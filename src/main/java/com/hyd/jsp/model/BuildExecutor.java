@@ -0,0 +1,18 @@
+package com.hyd.jsp.model;
+
+/**
+ * 构建命令的执行方式
+ */
+public enum BuildExecutor {
+
+  /**
+   * 每次构建启动新的进程
+   */
+  COLD,
+
+  /**
+   * Maven 命令交给常驻的 mvnd 守护进程执行，省去 JVM 启动、插件加载和 JIT 预热的时间。
+   * 每个项目使用独立的守护进程；mvnd 不可用或构建命令不是 mvn 时按 COLD 方式执行
+   */
+  DAEMON
+}
@@ -2,7 +2,35 @@ package com.hyd.jsp.model;
 
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public class BuildParams {
 
+  /**
+   * 构建命令，在源码目录下执行
+   */
+  private List<String> command = List.of("mvn", "-B", "package", "-DskipTests");
+
+  /**
+   * 构建命令的执行方式
+   */
+  private BuildExecutor executor = BuildExecutor.COLD;
+
+  /**
+   * 多模块 Maven 项目同时构建的模块数。大于 1 时在构建命令中加入 -T 参数，由 Maven reactor 并行构建互不依赖的模块；
+   * 开启编译规避时为同时构建的模块数
+   */
+  private int parallelism = 1;
+
+  /**
+   * 多模块 Maven 项目是否启用编译规避：模块自身的源码和上游模块的 ABI（公开的类和方法签名）都没有变化时，
+   * 使用上次的编译结果，不再编译。启用后逐个模块构建，需要 Maven 3.9 或以上版本，否则仍由 Maven reactor 构建
+   */
+  private boolean compileAvoidance = false;
+
+  /**
+   * 构建产物所在目录，相对于源码目录
+   */
+  private String outputDirectory = "target";
 }
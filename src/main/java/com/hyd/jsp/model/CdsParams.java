@@ -0,0 +1,54 @@
+package com.hyd.jsp.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AppCDS（应用类数据共享）：打包时以服务包的文件结构启动一次服务（训练），把加载过的类保存为归档，
+ * 服务包中加入归档和使用归档的启动脚本 bin/start-cds.sh，缩短服务的启动时间。
+ * 归档只对生成它的 JDK 有效（见 jsp.jdk-home），运行时 JDK 不同时 JVM 忽略归档正常启动。
+ * <p>
+ * JVM 使用归档前校验 jar 文件的修改时间，start-cds.sh 启动前把 jar 文件的修改时间改为 2000-01-01 00:00:00 UTC。
+ * 安装目录只读时需要在安装时修改（如 {@code TZ=UTC touch -t 200001010000.00}），否则脚本给出警告，服务不使用归档启动。
+ */
+@Data
+public class CdsParams {
+
+  /**
+   * 是否生成 AppCDS 归档，需要 JDK 13 及以上。服务包格式为 NONE 且不分层时不生成
+   */
+  private boolean enabled = false;
+
+  /**
+   * 启动的 jar 文件名，构建产物目录下只有一个 jar 文件时可以不指定
+   */
+  private String mainJar;
+
+  /**
+   * 训练和启动脚本共用的 JVM 参数。影响类加载的参数（如堆大小超过 32G）不同时归档无法使用
+   */
+  private List<String> jvmArgs = new ArrayList<>();
+
+  /**
+   * 训练时传给服务的参数，例如 Spring Boot 服务可以加上 --server.port=0 避免端口冲突
+   */
+  private List<String> trainingArgs = new ArrayList<>();
+
+  /**
+   * 训练时服务运行的秒数，到时后通知服务正常退出（SIGTERM），退出时生成归档。服务提前退出时立即结束训练
+   */
+  private int trainingSeconds = 30;
+
+  /**
+   * 检查参数
+   *
+   * @throws IllegalArgumentException 参数不正确
+   */
+  public void validate() {
+    if (enabled && trainingSeconds < 1) {
+      throw new IllegalArgumentException("cdsParams.trainingSeconds 必须大于 0：" + trainingSeconds);
+    }
+  }
+}
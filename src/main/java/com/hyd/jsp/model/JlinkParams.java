@@ -0,0 +1,30 @@
+package com.hyd.jsp.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 精简运行时：用 jdeps 分析服务和依赖用到的 JDK 模块，用 jlink 生成只包含这些模块的运行时，
+ * 打包到服务包的 runtime 目录下，启动时使用 runtime/bin/java。
+ * 生成运行时使用的 JDK 见 jsp.jdk-home。
+ */
+@Data
+public class JlinkParams {
+
+  /**
+   * 是否生成精简运行时。服务包格式为 NONE 且不分层时不生成
+   */
+  private boolean enabled = false;
+
+  /**
+   * jdeps 分析不出的模块，例如通过 ServiceLoader 加载的 jdk.crypto.ec（TLS 的椭圆曲线算法）、jdk.localedata（非英语的本地化数据）
+   */
+  private List<String> additionalModules = new ArrayList<>();
+
+  /**
+   * 是否去掉调试信息（行号等），去掉后异常堆栈中没有行号
+   */
+  private boolean stripDebug = false;
+}
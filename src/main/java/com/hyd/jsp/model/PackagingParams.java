@@ -8,4 +8,20 @@ public class PackagingParams {
   private SourceParams sourceParams = new SourceParams();
 
   private BuildParams buildParams = new BuildParams();
+
+  private ArchiveParams archiveParams = new ArchiveParams();
+
+  private CdsParams cdsParams = new CdsParams();
+
+  private JlinkParams jlinkParams = new JlinkParams();
+
+  /**
+   * 检查参数，保存配置和开始构建前调用
+   *
+   * @throws IllegalArgumentException 参数不正确
+   */
+  public void validate() {
+    archiveParams.validate();
+    cdsParams.validate();
+  }
 }
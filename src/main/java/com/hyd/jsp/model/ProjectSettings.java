@@ -2,10 +2,30 @@ package com.hyd.jsp.model;
 
 import lombok.Data;
 
+import java.util.regex.Pattern;
+
 @Data
 public class ProjectSettings {
 
+  /**
+   * 项目名称用于工作目录下的路径、文件名和配置的键，只能包含字母、数字、点、下划线和连字符，且不能以点开头
+   */
+  public static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]*");
+
   private String project;
 
   private PackagingParams packagingParams = new PackagingParams();
+
+  public static boolean isValidName(String project) {
+    return project != null && NAME_PATTERN.matcher(project).matches();
+  }
+
+  /**
+   * @throws IllegalArgumentException 项目名称不合法
+   */
+  public static void validateName(String project) {
+    if (!isValidName(project)) {
+      throw new IllegalArgumentException("项目名称 " + project + " 不合法，只能包含字母、数字、点、下划线和连字符，且不能以点开头");
+    }
+  }
 }
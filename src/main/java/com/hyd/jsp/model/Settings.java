@@ -1,12 +1,29 @@
 package com.hyd.jsp.model;
 
-import lombok.Data;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 
-import java.util.ArrayList;
 import java.util.List;
 
-@Data
+/**
+ * 全部配置的快照，创建后不可修改
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
 public class Settings {
 
-  private List<ProjectSettings> projects = new ArrayList<>();
+  private final List<ProjectSettings> projects;
+
+  public Settings() {
+    this(List.of());
+  }
+
+  @JsonCreator
+  public Settings(@JsonProperty("projects") List<ProjectSettings> projects) {
+    this.projects = projects == null ? List.of() : List.copyOf(projects);
+  }
 }
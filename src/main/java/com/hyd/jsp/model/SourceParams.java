@@ -5,4 +5,18 @@ import lombok.Data;
 @Data
 public class SourceParams {
 
+  /**
+   * 源码所在的本地目录，指定了 repository 时忽略
+   */
+  private String directory;
+
+  /**
+   * git 仓库地址，可以是远程地址、file:// 地址或本地路径
+   */
+  private String repository;
+
+  /**
+   * 要构建的分支、标签或提交
+   */
+  private String ref = "HEAD";
 }
@@ -0,0 +1,81 @@
+package com.hyd.jsp.settings;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.hyd.jsp.model.PackagingParams;
+import com.hyd.jsp.model.ProjectSettings;
+import com.hyd.jsp.utils.Jackson;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+
+/**
+ * 读取批量导入的构建配置。
+ * <p>
+ * 内容为 NDJSON，每条记录是一个 JSON 对象 {"project": ..., "packagingParams": {...}}。
+ * 用流式解析器逐条读取，不需要先把整个请求读入内存；同一项目出现多次时以最后一条为准。
+ * 任何一条记录有误（包括 {@link PackagingParams#validate()} 检查不通过）时抛出 IllegalArgumentException，
+ * 调用方不应保存其中任何一条。
+ */
+public class SettingsBatchReader {
+
+  private SettingsBatchReader() {
+  }
+
+  /**
+   * 读取全部记录，不关闭输入流
+   *
+   * @return 项目名称到构建配置的映射，按记录首次出现的顺序排列
+   */
+  public static LinkedHashMap<String, PackagingParams> read(InputStream inputStream) throws IOException {
+    var records = new LinkedHashMap<String, PackagingParams>();
+    var recordNumber = 0;
+
+    try (var parser = Jackson.createStandardJsonParser(inputStream)) {
+      try {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+          recordNumber++;
+          if (token != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("第 " + recordNumber + " 条记录不是 JSON 对象");
+          }
+
+          String project = null;
+          PackagingParams packagingParams = null;
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if ("project".equals(fieldName)) {
+              project = parser.getValueAsString();
+            } else if ("packagingParams".equals(fieldName)) {
+              packagingParams = Jackson.deserializeStandardJson(parser, PackagingParams.class);
+            } else {
+              parser.skipChildren();
+            }
+          }
+
+          if (StringUtils.isBlank(project)) {
+            throw new IllegalArgumentException("第 " + recordNumber + " 条记录缺少 project");
+          }
+          if (packagingParams == null) {
+            throw new IllegalArgumentException("第 " + recordNumber + " 条记录缺少 packagingParams");
+          }
+          try {
+            ProjectSettings.validateName(project);
+            packagingParams.validate();
+          } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("第 " + recordNumber + " 条记录" + e.getMessage(), e);
+          }
+          records.put(project, packagingParams);
+        }
+      } catch (JsonProcessingException e) {
+        var location = e.getLocation();
+        throw new IllegalArgumentException("第 " + Math.max(recordNumber, 1) + " 条记录格式错误"
+          + (location == null ? "" : "（第 " + location.getLineNr() + " 行）") + "：" + e.getOriginalMessage(), e);
+      }
+    }
+    return records;
+  }
+}
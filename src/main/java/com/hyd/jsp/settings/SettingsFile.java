@@ -0,0 +1,98 @@
+package com.hyd.jsp.settings;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.model.ProjectSettings;
+import com.hyd.jsp.model.Settings;
+import com.hyd.jsp.utils.Jackson;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * 将全部配置保存在一个文件中，每次保存都重写整个文件。
+ * 写入时先写临时文件再原子替换，避免写入中断后留下不完整的配置文件
+ */
+@Component
+@ConditionalOnProperty(prefix = "jsp", name = "settings-storage", havingValue = "file", matchIfMissing = true)
+@Slf4j
+public class SettingsFile implements SettingsStorage {
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  @Override
+  public Settings load() throws IOException {
+    return read(Path.of(config.getSettingsFilePath()), config.getSettingsFormat(), config.isSettingsFsync());
+  }
+
+  @Override
+  public void write(Settings settings, Collection<ProjectSettings> changedProjects) throws IOException {
+    writeAtomically(Path.of(config.getSettingsFilePath()), settings, config.getSettingsFormat(), config.isSettingsFsync());
+  }
+
+  /**
+   * 读取配置文件，根据文件头自动识别格式。如果文件格式与 format 不同，则立即转换为 format 格式
+   */
+  static Settings read(Path settingsFile, SettingsFormat format, boolean fsync) throws IOException {
+    if (!Files.exists(settingsFile)) {
+      log.info("Settings file {} not found. Using default settings.", settingsFile);
+      return new Settings();
+    }
+
+    Settings settings;
+    SettingsFormat fileFormat;
+    try (var in = new BufferedInputStream(Files.newInputStream(settingsFile), 64 * 1024)) {
+      in.mark(3);
+      var header = in.readNBytes(3);
+      in.reset();
+
+      fileFormat = Jackson.isBinary(header) ? SettingsFormat.SMILE : SettingsFormat.JSON;
+      settings = fileFormat == SettingsFormat.SMILE
+        ? Jackson.deserializeStandardBinary(in, Settings.class)
+        : Jackson.deserializeStandardJson(in, Settings.class);
+    }
+    log.info("Settings loaded from {} file {}.", fileFormat, settingsFile);
+
+    if (fileFormat != format) {
+      writeAtomically(settingsFile, settings, format, fsync);
+      log.info("Settings file {} converted from {} to {}.", settingsFile, fileFormat, format);
+    }
+    return settings;
+  }
+
+  static void writeAtomically(Path settingsFile, Settings settings, SettingsFormat format, boolean fsync) throws IOException {
+    settingsFile = settingsFile.toAbsolutePath();
+    var tempFile = settingsFile.resolveSibling(settingsFile.getFileName() + ".tmp");
+
+    try (var channel = FileChannel.open(tempFile,
+      StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+      var out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+      if (format == SettingsFormat.SMILE) {
+        Jackson.serializeStandardBinary(settings, out);
+      } else {
+        Jackson.serializeStandardJson(settings, out);
+      }
+      out.flush();
+
+      if (fsync) {
+        channel.force(true);
+      }
+    }
+
+    Files.move(tempFile, settingsFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    log.info("Settings saved to file {}.", settingsFile);
+  }
+}
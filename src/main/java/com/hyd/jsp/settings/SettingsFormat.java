@@ -0,0 +1,17 @@
+package com.hyd.jsp.settings;
+
+/**
+ * 配置文件的格式
+ */
+public enum SettingsFormat {
+
+  /**
+   * 文本格式，便于手工查看和修改
+   */
+  JSON,
+
+  /**
+   * Smile 二进制格式，体积更小、解析更快
+   */
+  SMILE
+}
@@ -0,0 +1,119 @@
+package com.hyd.jsp.settings;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.model.ProjectSettings;
+import com.hyd.jsp.model.Settings;
+import com.hyd.jsp.utils.Jackson;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+/**
+ * 以快照加日志的方式保存配置。
+ * <p>
+ * 每次保存只把修改过的项目配置追加到日志文件（每行一个项目的完整配置），写入量与修改量成正比；
+ * 日志记录数超过 jsp.settings-journal-compact-threshold 后，把全部配置写入快照文件并清空日志。
+ * 启动时先读取快照，再按顺序重放日志。快照文件就是 jsp.settings-file-path 指定的文件，格式由 jsp.settings-format 决定，
+ * 日志文件总是 JSON 格式。
+ */
+@Component
+@ConditionalOnProperty(prefix = "jsp", name = "settings-storage", havingValue = "journal")
+@Slf4j
+public class SettingsJournal implements SettingsStorage {
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  // 日志中的记录数
+  private int journalRecords;
+
+  @Override
+  public synchronized Settings load() throws IOException {
+    var snapshot = SettingsFile.read(snapshotFile(), config.getSettingsFormat(), config.isSettingsFsync());
+    var projects = new LinkedHashMap<String, ProjectSettings>();
+    snapshot.getProjects().forEach(p -> projects.put(p.getProject(), p));
+
+    var journalFile = journalFile();
+    journalRecords = 0;
+    if (Files.exists(journalFile)) {
+      for (var line : Files.readAllLines(journalFile)) {
+        if (StringUtils.isBlank(line)) {
+          continue;
+        }
+        try {
+          var projectSettings = Jackson.deserializeStandardJson(line, ProjectSettings.class);
+          projects.put(projectSettings.getProject(), projectSettings);
+          journalRecords++;
+        } catch (Exception e) {
+          // 通常是写入中断留下的最后一行
+          log.warn("Ignored broken settings journal record: {}", StringUtils.abbreviate(line, 200));
+        }
+      }
+      log.info("{} records replayed from settings journal {}.", journalRecords, journalFile);
+    }
+
+    var settings = new Settings(new ArrayList<>(projects.values()));
+    if (journalRecords > config.getSettingsJournalCompactThreshold()) {
+      compact(settings);
+    }
+    return settings;
+  }
+
+  @Override
+  public synchronized void write(Settings settings, Collection<ProjectSettings> changedProjects) throws IOException {
+    if (journalRecords + changedProjects.size() > config.getSettingsJournalCompactThreshold()) {
+      compact(settings);
+      return;
+    }
+
+    var buffer = new ByteArrayOutputStream();
+    for (var projectSettings : changedProjects) {
+      Jackson.serializeStandardJson(projectSettings, buffer);
+      buffer.write('\n');
+    }
+
+    try (var channel = FileChannel.open(journalFile(),
+      StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+
+      var bytes = ByteBuffer.wrap(buffer.toByteArray());
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+      if (config.isSettingsFsync()) {
+        channel.force(false);
+      }
+    }
+
+    journalRecords += changedProjects.size();
+    log.debug("{} records appended to settings journal.", changedProjects.size());
+  }
+
+  // 先写快照再清空日志。如果在两步之间中断，重放日志得到的结果与快照相同
+  private void compact(Settings settings) throws IOException {
+    SettingsFile.writeAtomically(snapshotFile(), settings, config.getSettingsFormat(), config.isSettingsFsync());
+    Files.deleteIfExists(journalFile());
+    journalRecords = 0;
+    log.info("Settings journal compacted into snapshot {}.", snapshotFile());
+  }
+
+  private Path snapshotFile() {
+    return Path.of(config.getSettingsFilePath());
+  }
+
+  private Path journalFile() {
+    return Path.of(config.getSettingsFilePath() + ".journal");
+  }
+}
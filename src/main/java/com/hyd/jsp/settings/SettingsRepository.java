@@ -1,19 +1,35 @@
 package com.hyd.jsp.settings;
 
 import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.metrics.PackagerMetrics;
 import com.hyd.jsp.model.PackagingParams;
 import com.hyd.jsp.model.ProjectSettings;
 import com.hyd.jsp.model.Settings;
-import com.hyd.jsp.utils.Jackson;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 配置存储。项目配置保存在以项目名称为键的并发索引中，
+ * {@link #getSettings()} 返回的 {@link Settings} 是只读快照，在配置修改后首次读取时重新生成。
+ * 索引中的 {@link ProjectSettings} 对象不会被修改，修改配置时总是替换为新对象。
+ * <p>
+ * 配置由后台线程延迟保存，一段时间内的多次保存合并为一次写入，应用关闭前会写入尚未保存的修改。
+ * 修改索引、记录修改的项目、递增版本在同一把锁内完成，保存时在这把锁内取得快照和修改的项目，
+ * 所以写入的修改总是包含在快照中，合并日志时不会丢失修改。
+ */
 @Component
 @Slf4j
 public class SettingsRepository {
@@ -21,43 +37,198 @@ public class SettingsRepository {
   @Autowired
   private JavaServicePackagerConfig config;
 
-  private Settings settings;
+  @Autowired
+  private SettingsStorage settingsStorage;
+
+  @Autowired
+  private PackagerMetrics metrics;
+
+  private final Map<String, ProjectSettings> projectIndex = new ConcurrentHashMap<>();
+
+  // 每次修改配置时递增，用于判断快照是否过期
+  private final AtomicLong version = new AtomicLong();
+
+  private volatile Snapshot snapshot = new Snapshot(0, new Settings());
+
+  // 上次保存之后修改过的项目
+  private final Set<String> changedProjects = ConcurrentHashMap.newKeySet();
+
+  // 已保存的版本
+  private volatile long persistedVersion;
+
+  private final Object flushLock = new Object();
+
+  private final AtomicBoolean writeScheduled = new AtomicBoolean();
+
+  private ScheduledExecutorService writer;
 
   @PostConstruct
   private void init() throws IOException {
-    var settingsFile = Path.of(config.getSettingsFilePath());
-    if (Files.exists(settingsFile)) {
-      var json = Files.readString(settingsFile);
-      this.settings = Jackson.deserializeStandardJson(json, Settings.class);
-      log.info("Settings loaded from file {}.", config.getSettingsFilePath());
-    } else {
-      this.settings = new Settings();
-      log.info("Settings file {} not found. Using default settings.", config.getSettingsFilePath());
-    }
+    var settings = settingsStorage.load();
+    settings.getProjects().forEach(p -> projectIndex.put(p.getProject(), p));
+    this.snapshot = new Snapshot(version.get(), settings);
+    this.persistedVersion = version.get();
+
+    this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+      var thread = new Thread(r, "settings-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  private void destroy() throws IOException, InterruptedException {
+    this.writer.shutdown();
+    this.writer.awaitTermination(10, TimeUnit.SECONDS);
+    flush();
   }
 
   public Settings getSettings() {
-    return settings;
+    return currentSnapshot().settings;
+  }
+
+  private Snapshot currentSnapshot() {
+    var current = this.snapshot;
+    if (current.version == version.get()) {
+      return current;
+    }
+
+    synchronized (this) {
+      current = this.snapshot;
+      var currentVersion = version.get();
+      if (current.version != currentVersion) {
+        var projects = new ArrayList<>(projectIndex.values());
+        projects.sort(Comparator.comparing(ProjectSettings::getProject));
+        current = new Snapshot(currentVersion, new Settings(projects));
+        this.snapshot = current;
+      }
+      return current;
+    }
+  }
+
+  /**
+   * 安排写入配置文件，立即返回。在 settingsWriteDelay 时间内的多次调用只写入一次
+   */
+  public void saveSettings() {
+    if (writeScheduled.compareAndSet(false, true)) {
+      try {
+        writer.schedule(this::writeInBackground, config.getSettingsWriteDelay().toMillis(), TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        writeScheduled.set(false);
+        log.warn("Settings writer is shut down, settings will be written on shutdown.");
+      }
+    }
   }
 
-  public void saveSettings() throws IOException {
-    var json = Jackson.serializeStandardJson(settings);
-    Files.writeString(Path.of(config.getSettingsFilePath()), json);
-    log.info("Settings saved to file {}.", config.getSettingsFilePath());
+  /**
+   * 立即将尚未保存的修改写入文件
+   */
+  public void flush() throws IOException {
+    synchronized (flushLock) {
+      Snapshot current;
+      var changedNames = new ArrayList<String>();
+      var changed = new ArrayList<ProjectSettings>();
+      // 修改配置时持有同一把锁，保证取出的修改都在快照中，同一批修改在同一次写入中
+      synchronized (this) {
+        current = currentSnapshot();
+        if (current.version == persistedVersion) {
+          return;
+        }
+
+        for (var name : changedProjects) {
+          changedProjects.remove(name);
+          changedNames.add(name);
+          changed.add(projectIndex.get(name));
+        }
+      }
+
+      try {
+        var start = System.nanoTime();
+        settingsStorage.write(current.settings, changed);
+        metrics.recordSettingsPersist(start);
+        persistedVersion = current.version;
+      } catch (IOException | RuntimeException e) {
+        changedProjects.addAll(changedNames);
+        throw e;
+      }
+    }
   }
 
+  private void writeInBackground() {
+    writeScheduled.set(false);
+    try {
+      flush();
+    } catch (Exception e) {
+      log.error("Failed to write settings, will retry later", e);
+      saveSettings();
+    }
+  }
+
+  /**
+   * @return 项目的配置，项目不存在或名称不合法时返回 null
+   */
+  public ProjectSettings findProjectSettings(String project) {
+    return ProjectSettings.isValidName(project) ? projectIndex.get(project) : null;
+  }
+
+  /**
+   * @throws IllegalArgumentException 项目名称不合法
+   */
   public void saveProjectPackagingParams(String project, PackagingParams packagingParams) {
-    var projects = this.settings.getProjects();
-
-    var projectSettings = projects.stream()
-      .filter(s -> s.getProject().equals(project))
-      .findFirst().orElseGet(() -> {
-        var s = new ProjectSettings();
-        s.setProject(project);
-        projects.add(s);
-        return s;
+    var projectSettings = createProjectSettings(project, packagingParams);
+    // 与 flush 互斥：flush 取出的修改一定包含在同时取得的快照中
+    synchronized (this) {
+      projectIndex.put(project, projectSettings);
+      changedProjects.add(project);
+      version.incrementAndGet();
+    }
+  }
+
+  /**
+   * 批量保存项目的构建配置。全部修改同时生效，{@link #getSettings()} 不会读到只包含部分修改的快照，
+   * 之后的一次写入包含全部修改。与原配置相同的项目不做修改
+   *
+   * @param packagingParams 项目名称到构建配置的映射
+   *
+   * @return 配置有变化的项目名称
+   */
+  public List<String> saveAllPackagingParams(Map<String, PackagingParams> packagingParams) {
+    // 先检查全部名称，不保存部分修改
+    packagingParams.keySet().forEach(ProjectSettings::validateName);
+    var changed = new ArrayList<String>();
+    synchronized (this) {
+      packagingParams.forEach((project, params) -> {
+        var existing = projectIndex.get(project);
+        if (existing == null || !params.equals(existing.getPackagingParams())) {
+          projectIndex.put(project, createProjectSettings(project, params));
+          changedProjects.add(project);
+          changed.add(project);
+        }
       });
+      if (!changed.isEmpty()) {
+        version.incrementAndGet();
+      }
+    }
+    return changed;
+  }
 
+  private static ProjectSettings createProjectSettings(String project, PackagingParams packagingParams) {
+    ProjectSettings.validateName(project);
+    var projectSettings = new ProjectSettings();
+    projectSettings.setProject(project);
     projectSettings.setPackagingParams(packagingParams);
+    return projectSettings;
+  }
+
+  private static class Snapshot {
+
+    private final long version;
+
+    private final Settings settings;
+
+    private Snapshot(long version, Settings settings) {
+      this.version = version;
+      this.settings = settings;
+    }
   }
 }
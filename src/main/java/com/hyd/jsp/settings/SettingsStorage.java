@@ -0,0 +1,26 @@
+package com.hyd.jsp.settings;
+
+import com.hyd.jsp.model.ProjectSettings;
+import com.hyd.jsp.model.Settings;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * 配置的持久化方式，通过 jsp.settings-storage 选择
+ */
+public interface SettingsStorage {
+
+  /**
+   * 读取全部配置
+   */
+  Settings load() throws IOException;
+
+  /**
+   * 保存配置
+   *
+   * @param settings        全部配置的快照
+   * @param changedProjects 上次保存之后修改过的项目配置
+   */
+  void write(Settings settings, Collection<ProjectSettings> changedProjects) throws IOException;
+}
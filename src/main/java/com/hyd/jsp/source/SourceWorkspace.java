@@ -0,0 +1,55 @@
+package com.hyd.jsp.source;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * 构建任务使用的源码目录，使用完毕后需要关闭
+ */
+@Getter
+public class SourceWorkspace implements AutoCloseable {
+
+  private final Path directory;
+
+  // 源码的提交，无法确定时为 null
+  private final String revision;
+
+  // 源码的 git tree 摘要，为 null 时需要遍历目录计算摘要
+  private final String treeId;
+
+  private final Releaser releaser;
+
+  public SourceWorkspace(Path directory, String revision, String treeId, Releaser releaser) {
+    this.directory = directory;
+    this.revision = revision;
+    this.treeId = treeId;
+    this.releaser = releaser;
+  }
+
+  /**
+   * 释放源码目录。任务被中断时也要释放，释放期间先清除线程的中断标记，结束后恢复
+   */
+  @Override
+  public void close() throws IOException {
+    if (releaser == null) {
+      return;
+    }
+    var interrupted = Thread.interrupted();
+    try {
+      releaser.release(this);
+    } catch (InterruptedException e) {
+      interrupted = true;
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public interface Releaser {
+
+    void release(SourceWorkspace workspace) throws IOException, InterruptedException;
+  }
+}
@@ -0,0 +1,151 @@
+package com.hyd.jsp.source;
+
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.model.SourceParams;
+import com.hyd.jsp.utils.Commands;
+import com.hyd.jsp.utils.GitRefs;
+import com.hyd.jsp.utils.Hashes;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 管理构建任务的源码目录。
+ * <p>
+ * 每个仓库在本地保存一个镜像（git clone --mirror），之后只做增量 fetch；
+ * 每个任务从镜像创建独立的工作树（git worktree），对象文件与镜像共享，不需要重新下载。
+ */
+@Component
+@Slf4j
+public class SourceWorkspaceManager {
+
+  @Autowired
+  private JavaServicePackagerConfig config;
+
+  // 同一个镜像上更新镜像和删除工作树需要依次执行
+  private final Map<Path, Object> mirrorLocks = new ConcurrentHashMap<>();
+
+  /**
+   * 为任务准备源码目录
+   *
+   * @param jobId             任务 ID
+   * @param sourceParams      源码配置
+   * @param requestedRevision 请求的版本，为空时使用 sourceParams 中的 ref
+   * @param logFile           git 输出的日志文件
+   */
+  public SourceWorkspace prepare(
+    String jobId, SourceParams sourceParams, String requestedRevision, Path logFile
+  ) throws IOException, InterruptedException {
+
+    if (StringUtils.isNotBlank(sourceParams.getRepository())) {
+      var ref = StringUtils.defaultIfBlank(requestedRevision, sourceParams.getRef());
+      return checkoutWorktree(jobId, sourceParams.getRepository(), StringUtils.defaultIfBlank(ref, "HEAD"), logFile);
+    }
+
+    if (StringUtils.isBlank(sourceParams.getDirectory())) {
+      throw new IllegalStateException("未指定源码目录或仓库地址");
+    }
+    if (StringUtils.isNotBlank(requestedRevision)) {
+      throw new IllegalStateException("本地源码目录不能指定版本 " + requestedRevision);
+    }
+
+    var sourceDir = Path.of(sourceParams.getDirectory());
+    if (!Files.isDirectory(sourceDir)) {
+      throw new IllegalStateException("源码目录 " + sourceDir + " 不存在");
+    }
+    return new SourceWorkspace(sourceDir, GitRefs.resolveHead(sourceDir), null, null);
+  }
+
+  private SourceWorkspace checkoutWorktree(
+    String jobId, String repository, String ref, Path logFile
+  ) throws IOException, InterruptedException {
+
+    var mirrorDir = mirrorDirectory(repository);
+    var worktreeDir = config.workPath("worktrees", jobId).toAbsolutePath();
+
+    String revision;
+    synchronized (mirrorLock(mirrorDir)) {
+      updateMirror(repository, mirrorDir, ref, logFile);
+      revision = git(mirrorDir, "rev-parse", "--verify", ref + "^{commit}");
+    }
+
+    // 提交已在镜像中，检出时不需要锁：每个任务的工作树互不相同，创建中的工作树不会被 prune 清理
+    var treeId = git(mirrorDir, "rev-parse", revision + "^{tree}");
+    Files.createDirectories(worktreeDir.getParent());
+    Commands.run(List.of("git", "--git-dir=" + mirrorDir, "worktree", "add", "--detach", worktreeDir.toString(), revision),
+      worktreeDir.getParent(), logFile);
+
+    log.info("Worktree {} created at revision {} of {}", worktreeDir, revision, repository);
+    return new SourceWorkspace(worktreeDir, revision, treeId, workspace -> removeWorktree(mirrorDir, workspace.getDirectory()));
+  }
+
+  private void updateMirror(String repository, Path mirrorDir, String ref, Path logFile) throws IOException, InterruptedException {
+    if (!Files.exists(mirrorDir)) {
+      // 先克隆到临时目录，避免克隆失败后留下不完整的镜像
+      var tempDir = mirrorDir.resolveSibling(mirrorDir.getFileName() + ".tmp");
+      FileSystemUtils.deleteRecursively(tempDir);
+      Files.createDirectories(mirrorDir.getParent());
+
+      log.info("Cloning mirror of {} into {}", repository, mirrorDir);
+      Commands.run(List.of("git", "clone", "--mirror", repository, tempDir.toString()), mirrorDir.getParent(), logFile);
+      Files.move(tempDir, mirrorDir);
+      return;
+    }
+
+    // 请求的提交已经在镜像中，无需 fetch
+    if (GitRefs.isCommitId(ref) && commitExists(mirrorDir, ref)) {
+      return;
+    }
+
+    Commands.run(List.of("git", "--git-dir=" + mirrorDir, "fetch", "--prune", "origin"), mirrorDir, logFile);
+  }
+
+  private void removeWorktree(Path mirrorDir, Path worktreeDir) throws IOException, InterruptedException {
+    synchronized (mirrorLock(mirrorDir)) {
+      try {
+        git(mirrorDir, "worktree", "remove", "--force", worktreeDir.toString());
+      } catch (IOException e) {
+        log.warn("Failed to remove worktree {}: {}", worktreeDir, e.getMessage());
+        FileSystemUtils.deleteRecursively(worktreeDir);
+        git(mirrorDir, "worktree", "prune");
+      }
+    }
+  }
+
+  private boolean commitExists(Path mirrorDir, String commit) throws InterruptedException {
+    try {
+      git(mirrorDir, "cat-file", "-e", commit + "^{commit}");
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private String git(Path mirrorDir, String... args) throws IOException, InterruptedException {
+    var command = new ArrayList<String>();
+    command.add("git");
+    command.add("--git-dir=" + mirrorDir);
+    command.addAll(List.of(args));
+    return Commands.output(command, mirrorDir);
+  }
+
+  private Path mirrorDirectory(String repository) {
+    var name = StringUtils.substringAfterLast("/" + StringUtils.removeEnd(repository.replace('\\', '/'), "/"), "/");
+    var hash = Hashes.sha256Hex(repository).substring(0, 12);
+    return config.workPath("mirrors", StringUtils.removeEnd(name, ".git") + "-" + hash + ".git").toAbsolutePath();
+  }
+
+  private Object mirrorLock(Path mirrorDir) {
+    return mirrorLocks.computeIfAbsent(mirrorDir, d -> new Object());
+  }
+}
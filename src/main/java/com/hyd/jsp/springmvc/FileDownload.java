@@ -0,0 +1,98 @@
+package com.hyd.jsp.springmvc;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 文件下载。
+ * <ul>
+ *   <li>响应头带有强 ETag，请求头 If-None-Match 匹配时返回 304</li>
+ *   <li>支持单个区间的 Range 请求（断点续传），If-Range 与 ETag 不匹配时返回整个文件，多个区间时也返回整个文件</li>
+ *   <li>容器支持 sendfile 时（Tomcat NIO）由容器直接从文件发送，否则通过 FileChannel.transferTo 写出，都不在堆中缓存文件内容</li>
+ * </ul>
+ */
+public class FileDownload {
+
+  private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+  private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+  private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+  /**
+   * 发送文件
+   *
+   * @param file     文件
+   * @param hash     文件内容的摘要，用作 ETag
+   * @param request  请求
+   * @param response 响应
+   */
+  public static void send(Path file, String hash, HttpServletRequest request, HttpServletResponse response) throws IOException {
+    var etag = "\"" + hash + "\"";
+    if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+      return;
+    }
+
+    var length = Files.size(file);
+    long start = 0;
+    long end = length;
+
+    response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+    response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getFileName() + "\"");
+
+    var rangeHeader = request.getHeader(HttpHeaders.RANGE);
+    var ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+    if (rangeHeader != null && (ifRange == null || ifRange.equals(etag))) {
+      try {
+        var ranges = HttpRange.parseRanges(rangeHeader);
+        if (ranges.size() == 1) {
+          var range = ranges.get(0);
+          start = range.getRangeStart(length);
+          end = range.getRangeEnd(length) + 1;
+          if (start >= length) {
+            throw new IllegalArgumentException("Range start " + start + " exceeds length " + length);
+          }
+          response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+          response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+        }
+      } catch (IllegalArgumentException e) {
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+        response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+        return;
+      }
+    }
+
+    response.setContentLengthLong(end - start);
+    if ("HEAD".equals(request.getMethod()) || end == start) {
+      return;
+    }
+
+    if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+      request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+      request.setAttribute(SENDFILE_START, start);
+      request.setAttribute(SENDFILE_END, end);
+      return;
+    }
+
+    try (var channel = FileChannel.open(file)) {
+      var target = Channels.newChannel(response.getOutputStream());
+      while (start < end) {
+        start += channel.transferTo(start, end - start, target);
+      }
+    }
+  }
+}
@@ -6,8 +6,6 @@ import com.hyd.jsp.utils.Jackson;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.io.Serializable;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -25,8 +23,6 @@ public class Result implements Serializable {
 
   private static final long serialVersionUID = 1L;
 
-  private static final SimpleDateFormat FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-
   private static int DEFAULT_SUCCESS = 0;
 
   private static int DEFAULT_FAIL = -1;
@@ -35,7 +31,7 @@ public class Result implements Serializable {
 
   private String message;      // 相关信息，通常用于展示错误信息
 
-  private Map<String, Object> data = new HashMap<>();   // 返回值
+  private Map<String, Object> data;   // 返回值，第一次设置值或读取 data 时才创建
 
   private String errorStackTrace;        // 相关异常信息
 
@@ -58,7 +54,7 @@ public class Result implements Serializable {
   public Result(Result original) {
     this.resultCode = original.resultCode;
     this.message = original.message;
-    this.data = original.data == null ? new HashMap<>() : original.data;
+    this.data = original.getData();
     this.errorStackTrace = original.errorStackTrace;
   }
 
@@ -138,6 +134,16 @@ public class Result implements Serializable {
   ////////////////////////////////////////////////////////////////
 
   public Map<String, Object> getData() {
+    if (this.data == null) {
+      this.data = new HashMap<>();
+    }
+    return data;
+  }
+
+  /**
+   * 返回 data，没有设置过值时返回 null 而不创建。用于序列化
+   */
+  Map<String, Object> peekData() {
     return data;
   }
 
@@ -210,47 +216,33 @@ public class Result implements Serializable {
    *
    * @return 如果属性所代表的 JsonElement 对象能够被转化成 T 对象的话，则返回一个包含了属性值的 T 对象。
    */
-  @SuppressWarnings({"unchecked", "Duplicates"})
+  @SuppressWarnings("unchecked")
   public <T> T getObject(String key, Class<T> type) {
-    Object value = data.get(key);
+    Object value = get(key);
     if (value == null) {
       return null;
     }
 
-    if (type == Date.class) {
-
-      if (value instanceof Number || value.toString().matches("\\d+")) {
-        return (T) new Date(Long.parseLong(value.toString()));
-      }
-
-      try {
-        return (T) FORMAT.parse(value.toString());
-      } catch (ParseException e) {
-        throw new RuntimeException("Property \"" + key + "\" cannot be converted to " + type, e);
-      }
-    } else if (type.isAssignableFrom(value.getClass())) {
+    if (type.isInstance(value)) {
       return (T) value;
-    } else if (Number.class.isAssignableFrom(type)) {
-      try {
-        String strValue = value.toString();
-
-        // 如果目标类型为整数，则去掉小数部分
-        strValue = removeDecimalsIfNecessary(type, strValue);
+    }
 
-        return type.getDeclaredConstructor(new Class<?>[]{String.class}).newInstance(strValue);
-      } catch (Exception e) {
-        throw new RuntimeException("Property \"" + key + "\" cannot be converted to " + type, e);
-      }
-    } else if (value instanceof Map) {
-      return Jackson.deserializeMap((Map<String, Object>) value, type);
+    Object converted;
+    try {
+      converted = ValueConverters.converterFor(type).apply(value);
+    } catch (Exception e) {
+      throw new RuntimeException("Property \"" + key + "\" cannot be converted to " + type, e);
     }
 
-    throw new RuntimeException("Property \"" + key + "\" cannot be converted to " + type);
+    if (converted == null) {
+      throw new RuntimeException("Property \"" + key + "\" cannot be converted to " + type);
+    }
+    return (T) converted;
   }
 
   @SuppressWarnings("unchecked")
   public <T> List<T> getList(String key, Function<JsonNode, T> converter) {
-    Object value = data.get(key);
+    Object value = get(key);
 
     if (value == null) {
       return null;
@@ -266,7 +258,7 @@ public class Result implements Serializable {
 
   @SuppressWarnings({"Duplicates", "unchecked"})
   public <T> List<T> getList(String key, Class<T> type) {
-    Object value = data.get(key);
+    Object value = get(key);
 
     if (value == null) {
       return null;
@@ -274,7 +266,11 @@ public class Result implements Serializable {
 
     if (value instanceof ArrayNode) {
       ArrayNode list = (ArrayNode) value;
-      return StreamSupport.stream(list.spliterator(), false).map(node -> Jackson.deserializeNode(node, type)).collect(Collectors.toList());
+      List<T> result = new ArrayList<>(list.size());
+      for (JsonNode node : list) {
+        result.add(Jackson.deserializeNode(node, type));
+      }
+      return result;
     } else if (value instanceof List) {
       List list = (List) value;
 
@@ -382,15 +378,6 @@ public class Result implements Serializable {
     }
   }
 
-  // 如果 type 为整数，则去掉 strValue 的小数部分
-  private <T> String removeDecimalsIfNecessary(Class<T> type, String strValue) {
-    int dotIndex = strValue.indexOf(".");
-    if ((type == Integer.class || type == Long.class) && dotIndex >= 0) {
-      strValue = strValue.substring(0, dotIndex);
-    }
-    return strValue;
-  }
-
   public int getResultCode() {
     return resultCode;
   }
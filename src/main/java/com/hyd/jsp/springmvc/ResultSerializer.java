@@ -0,0 +1,42 @@
+package com.hyd.jsp.springmvc;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+
+/**
+ * 直接输出 {@link Result} 的各个属性，不经过 Bean 属性查找。输出的内容与默认的 Bean 序列化相同
+ */
+@JsonComponent
+public class ResultSerializer extends StdSerializer<Result> {
+
+  private static final long serialVersionUID = 1L;
+
+  public ResultSerializer() {
+    super(Result.class);
+  }
+
+  @Override
+  public void serialize(Result result, JsonGenerator gen, SerializerProvider provider) throws IOException {
+    gen.writeStartObject(result);
+    gen.writeNumberField("resultCode", result.getResultCode());
+    gen.writeStringField("message", result.getMessage());
+
+    gen.writeFieldName("data");
+    // 没有设置过值的 Result 不创建 data，输出与空 data 相同
+    var data = result.peekData();
+    if (data == null || data.isEmpty()) {
+      gen.writeStartObject();
+      gen.writeEndObject();
+    } else {
+      provider.defaultSerializeValue(data, gen);
+    }
+
+    gen.writeStringField("errorStackTrace", result.getErrorStackTrace());
+    gen.writeBooleanField("success", result.isSuccess());
+    gen.writeEndObject();
+  }
+}
@@ -0,0 +1,28 @@
+package com.hyd.jsp.springmvc;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * 允许接口以 Smile 二进制格式收发内容。
+ * 请求头 Accept 或 Content-Type 为 application/x-jackson-smile 时使用，其他情况仍使用 JSON
+ */
+@Component
+public class SmileMessageConverterConfigurer implements WebMvcConfigurer {
+
+  @Autowired
+  private Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+  @Override
+  public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+    var objectMapper = objectMapperBuilder.factory(new SmileFactory()).build();
+    converters.add(new MappingJackson2SmileHttpMessageConverter(objectMapper));
+  }
+}
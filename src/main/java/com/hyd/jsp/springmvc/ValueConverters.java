@@ -0,0 +1,102 @@
+package com.hyd.jsp.springmvc;
+
+import com.hyd.jsp.utils.Jackson;
+
+import java.lang.reflect.Constructor;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * {@link Result#getObject(String, Class)} 使用的类型转换器，每个目标类型的转换器只创建一次。
+ * 转换器返回 null 表示无法转换
+ */
+class ValueConverters {
+
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+  private static final Map<Class<?>, Function<Object, Object>> CONVERTERS = new ConcurrentHashMap<>();
+
+  static {
+    CONVERTERS.put(Date.class, ValueConverters::toDate);
+    CONVERTERS.put(Integer.class, v -> v instanceof Number ? Math.toIntExact(toLongExact((Number) v)) : Integer.valueOf(removeDecimals(v.toString())));
+    CONVERTERS.put(Long.class, v -> v instanceof Number ? toLongExact((Number) v) : Long.valueOf(removeDecimals(v.toString())));
+    CONVERTERS.put(Double.class, v -> v instanceof Number ? ((Number) v).doubleValue() : Double.valueOf(v.toString()));
+    CONVERTERS.put(Float.class, v -> v instanceof Number ? ((Number) v).floatValue() : Float.valueOf(v.toString()));
+    CONVERTERS.put(Short.class, v -> Short.valueOf(v.toString()));
+    CONVERTERS.put(Byte.class, v -> Byte.valueOf(v.toString()));
+    CONVERTERS.put(BigDecimal.class, v -> new BigDecimal(v.toString()));
+    CONVERTERS.put(BigInteger.class, v -> new BigInteger(v.toString()));
+  }
+
+  static Function<Object, Object> converterFor(Class<?> type) {
+    return CONVERTERS.computeIfAbsent(type, ValueConverters::createConverter);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Function<Object, Object> createConverter(Class<?> type) {
+    if (Number.class.isAssignableFrom(type)) {
+      Constructor<?> constructor;
+      try {
+        constructor = type.getDeclaredConstructor(String.class);
+      } catch (NoSuchMethodException e) {
+        return v -> null;
+      }
+      return v -> {
+        try {
+          return constructor.newInstance(v.toString());
+        } catch (ReflectiveOperationException e) {
+          throw new IllegalArgumentException(e);
+        }
+      };
+    }
+
+    return v -> v instanceof Map ? Jackson.deserializeMap((Map<String, Object>) v, type) : null;
+  }
+
+  private static Date toDate(Object value) {
+    if (value instanceof Number) {
+      return new Date(((Number) value).longValue());
+    }
+
+    var str = value.toString();
+    if (isDigits(str)) {
+      return new Date(Long.parseLong(str));
+    }
+    return Date.from(LocalDateTime.parse(str, DATE_FORMAT).atZone(ZoneId.systemDefault()).toInstant());
+  }
+
+  private static boolean isDigits(String str) {
+    if (str.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < str.length(); i++) {
+      var c = str.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // 整数去掉小数部分，超出 long 的范围时抛出 ArithmeticException，不会静默溢出
+  private static long toLongExact(Number number) {
+    if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+      return number.longValue();
+    }
+    return new BigDecimal(number.toString()).setScale(0, RoundingMode.DOWN).longValueExact();
+  }
+
+  // 目标类型为整数时去掉小数部分
+  private static String removeDecimals(String str) {
+    int dotIndex = str.indexOf('.');
+    return dotIndex >= 0 ? str.substring(0, dotIndex) : str;
+  }
+}
@@ -0,0 +1,172 @@
+package com.hyd.jsp.utils;
+
+import com.hyd.jsp.log.LiveLog;
+import com.hyd.jsp.log.LogRingBuffer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 执行外部命令
+ */
+@Slf4j
+public class Commands {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  // 日志文件对应的实时日志，写入日志文件的内容同时写入缓冲区
+  private static final Map<Path, LiveLog> LIVE_LOGS = new ConcurrentHashMap<>();
+
+  /**
+   * 将写入日志文件的内容同时写入实时日志。单独记录的输出文件 "日志文件名.部分名称" 写入实时日志的对应部分
+   */
+  public static void attachLiveLog(Path logFile, LiveLog liveLog) {
+    LIVE_LOGS.put(logFile.toAbsolutePath(), liveLog);
+  }
+
+  public static void detachLiveLog(Path logFile) {
+    LIVE_LOGS.remove(logFile.toAbsolutePath());
+  }
+
+  /**
+   * 日志文件对应的实时日志缓冲区，没有时返回 null
+   */
+  private static LogRingBuffer liveLogBuffer(Path logFile) {
+    var file = logFile.toAbsolutePath();
+    var liveLog = LIVE_LOGS.get(file);
+    if (liveLog != null) {
+      return liveLog.getBuffer();
+    }
+    var part = liveLogPart(file);
+    return part == null ? null : part.getKey().openPart(part.getValue());
+  }
+
+  /**
+   * 单独记录的输出文件对应的实时日志和部分名称，没有时返回 null
+   */
+  private static Map.Entry<LiveLog, String> liveLogPart(Path file) {
+    var fileName = file.getFileName().toString();
+    for (var entry : LIVE_LOGS.entrySet()) {
+      var logFile = entry.getKey();
+      var prefix = logFile.getFileName() + ".";
+      if (fileName.startsWith(prefix) && logFile.getParent().equals(file.getParent())) {
+        return Map.entry(entry.getValue(), fileName.substring(prefix.length()));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 在指定目录下执行命令，输出追加到日志文件中，命令返回非 0 时抛出异常。
+   * 输出由单独的线程读取，调用线程被中断时结束命令进程
+   */
+  public static void run(List<String> command, Path directory, Path logFile) throws IOException, InterruptedException {
+    var process = new ProcessBuilder(command)
+      .directory(directory.toFile())
+      .redirectErrorStream(true)
+      .start();
+
+    var liveLog = liveLogBuffer(logFile);
+    var pump = new Thread(() -> {
+      try (var in = process.getInputStream();
+           var out = Files.newOutputStream(logFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+        copy(in, out, liveLog);
+      } catch (IOException e) {
+        log.warn("Failed to write output of {} to {}", command.get(0), logFile, e);
+      }
+    }, "log-pump-" + process.pid());
+    pump.setDaemon(true);
+    pump.start();
+
+    int exitCode;
+    try {
+      exitCode = process.waitFor();
+      pump.join();
+    } catch (InterruptedException e) {
+      process.destroyForcibly();
+      throw e;
+    }
+
+    if (exitCode != 0) {
+      throw new IOException("Command " + command + " exited with code " + exitCode);
+    }
+  }
+
+  /**
+   * 在指定目录下执行命令并返回输出内容，命令返回非 0 时抛出异常
+   */
+  public static String output(List<String> command, Path directory) throws IOException, InterruptedException {
+    var process = new ProcessBuilder(command)
+      .directory(directory.toFile())
+      .redirectErrorStream(true)
+      .start();
+
+    String output;
+    int exitCode;
+    try {
+      output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+      exitCode = process.waitFor();
+    } catch (InterruptedException e) {
+      process.destroyForcibly();
+      throw e;
+    }
+
+    if (exitCode != 0) {
+      throw new IOException("Command " + command + " exited with code " + exitCode + ": " + output);
+    }
+    return output;
+  }
+
+  /**
+   * 将单独记录的命令输出整体追加到日志文件中，然后删除。用于同时执行的多个命令，避免输出交错
+   *
+   * @param source  单独记录的输出文件
+   * @param logFile 日志文件
+   * @param title   输出内容前的标题
+   */
+  public static void appendLog(Path source, Path logFile, String title) {
+    synchronized (Commands.class) {
+      var liveLog = liveLogBuffer(logFile);
+      try (var out = Files.newOutputStream(logFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+        var header = ("\n==================== " + title + " ====================\n").getBytes(StandardCharsets.UTF_8);
+        out.write(header);
+        if (liveLog != null) {
+          liveLog.write(header, 0, header.length);
+        }
+        if (Files.exists(source)) {
+          try (var in = Files.newInputStream(source)) {
+            copy(in, out, liveLog);
+          }
+          Files.delete(source);
+        }
+      } catch (IOException e) {
+        log.warn("Failed to append {} to {}", source, logFile, e);
+      } finally {
+        var part = liveLogPart(source.toAbsolutePath());
+        if (part != null) {
+          part.getKey().closePart(part.getValue());
+        }
+      }
+    }
+  }
+
+  private static void copy(InputStream in, OutputStream out, LogRingBuffer liveLog) throws IOException {
+    var buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, read);
+      if (liveLog != null) {
+        liveLog.write(buffer, 0, read);
+      }
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.hyd.jsp.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 直接读取 .git 目录下的文件来解析引用，不需要启动 git 进程
+ */
+public class GitRefs {
+
+  private static final String REF_PREFIX = "ref: ";
+
+  /**
+   * 解析工作目录当前检出的提交，无法解析时返回 null
+   */
+  public static String resolveHead(Path workDir) {
+    try {
+      var gitDir = findGitDir(workDir);
+      return gitDir == null ? null : resolve(gitDir, "HEAD");
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * 在 git 目录（可以是裸仓库）中解析引用，无法解析时返回 null
+   */
+  public static String resolve(Path gitDir, String ref) throws IOException {
+    for (int depth = 0; depth < 5; depth++) {
+      var value = readRef(gitDir, ref);
+      if (value == null) {
+        return null;
+      }
+      if (!value.startsWith(REF_PREFIX)) {
+        return value;
+      }
+      ref = value.substring(REF_PREFIX.length()).trim();
+    }
+    return null;
+  }
+
+  public static boolean isCommitId(String value) {
+    if (value == null || value.length() != 40) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (Character.digit(value.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String readRef(Path gitDir, String ref) throws IOException {
+    var refFile = gitDir.resolve(ref);
+    if (Files.isRegularFile(refFile)) {
+      return Files.readString(refFile).trim();
+    }
+
+    // 工作树的分支引用保存在主仓库中
+    var commonDir = commonDir(gitDir);
+    if (!commonDir.equals(gitDir) && Files.isRegularFile(commonDir.resolve(ref))) {
+      return Files.readString(commonDir.resolve(ref)).trim();
+    }
+
+    var packedRefs = commonDir.resolve("packed-refs");
+    if (Files.isRegularFile(packedRefs)) {
+      for (var line : Files.readAllLines(packedRefs)) {
+        if (line.endsWith(" " + ref) && !line.startsWith("#")) {
+          return line.substring(0, line.indexOf(' '));
+        }
+      }
+    }
+    return null;
+  }
+
+  private static Path commonDir(Path gitDir) throws IOException {
+    var commonDirFile = gitDir.resolve("commondir");
+    if (Files.isRegularFile(commonDirFile)) {
+      return gitDir.resolve(Files.readString(commonDirFile).trim()).normalize();
+    }
+    return gitDir;
+  }
+
+  private static Path findGitDir(Path workDir) throws IOException {
+    var dotGit = workDir.resolve(".git");
+    if (Files.isDirectory(dotGit)) {
+      return dotGit;
+    }
+    if (Files.isRegularFile(dotGit)) {
+      var content = Files.readString(dotGit).trim();
+      if (content.startsWith("gitdir: ")) {
+        return workDir.resolve(content.substring("gitdir: ".length())).normalize();
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,52 @@
+package com.hyd.jsp.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 计算摘要
+ */
+public class Hashes {
+
+  public static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static String sha256Hex(String content) {
+    return sha256Hex(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static String sha256Hex(byte[] content) {
+    return toHex(sha256().digest(content));
+  }
+
+  public static String sha256Hex(Path file) throws IOException {
+    var digest = sha256();
+    var buffer = new byte[64 * 1024];
+    try (InputStream in = Files.newInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  public static String toHex(byte[] bytes) {
+    var chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+      chars[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+    }
+    return new String(chars);
+  }
+}
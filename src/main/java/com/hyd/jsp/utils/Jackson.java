@@ -1,38 +1,97 @@
 package com.hyd.jsp.utils;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.*;
 import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
 import lombok.SneakyThrows;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.fasterxml.jackson.databind.ObjectMapper.DefaultTyping.NON_FINAL;
 
 /**
  * 使用 Jackson 序列化和反序列化
+ * <p>
+ * ObjectReader 和 ObjectWriter 按类型缓存复用，避免每次调用都查找序列化器。
+ * 除 JSON 外还提供 Smile 二进制格式的序列化，Smile 与 JSON 的数据模型相同，但体积更小、解析更快。
+ * 启动时指定 -Djsp.jackson.blackbird=true 可以注册 Blackbird 模块，用生成的代码代替反射访问属性。
  */
 public class Jackson {
 
+  public static final String BLACKBIRD_PROPERTY = "jsp.jackson.blackbird";
+
   private static final ObjectMapper STRICT;                   // 带类型的序列化和反序列化
 
   private static final ObjectMapper LOOSE;                    // 不带类型的序列化和反序列化
 
   private static final ObjectMapper LOOSE_NON_NULL_PROP;      // 不带类型，且忽略 null 属性
 
+  private static final ObjectMapper CANONICAL;                // 不带类型，属性和 Map 键按字母排序
+
+  private static final ObjectMapper BINARY_STRICT;            // Smile 格式，带类型的序列化和反序列化
+
+  private static final ObjectMapper BINARY_LOOSE;             // Smile 格式，不带类型的序列化和反序列化
+
+  private static final ObjectMapper BINARY_LOOSE_NON_NULL_PROP; // Smile 格式，不带类型，且忽略 null 属性
+
+  private static final ObjectWriter LOOSE_STREAM_WRITER;      // 写入输出流，不关闭输出流
+
+  private static final ObjectWriter BINARY_LOOSE_STREAM_WRITER;
+
+  private static final ObjectWriter LOOSE_INDENT_WRITER;
+
+  private static final ObjectWriter LOOSE_NON_NULL_PROP_INDENT_WRITER;
+
+  private static final Map<Class<?>, ObjectReader> LOOSE_READERS = new ConcurrentHashMap<>();
+
+  private static final Map<Class<?>, ObjectReader> STRICT_READERS = new ConcurrentHashMap<>();
+
+  private static final Map<Class<?>, ObjectReader> BINARY_LOOSE_READERS = new ConcurrentHashMap<>();
+
+  private static final Map<Class<?>, ObjectWriter> LOOSE_WRITERS = new ConcurrentHashMap<>();
+
+  private static final Map<Class<?>, ObjectWriter> LOOSE_NON_NULL_PROP_WRITERS = new ConcurrentHashMap<>();
+
   static {
-    STRICT = new JsonMapper();
-    STRICT.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-    STRICT.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+    STRICT = configure(new JsonMapper());
 
     LOOSE = STRICT.copy();
     LOOSE_NON_NULL_PROP = STRICT.copy();
+    CANONICAL = STRICT.copy();
 
     STRICT.activateDefaultTyping(STRICT.getPolymorphicTypeValidator(), NON_FINAL);
     LOOSE_NON_NULL_PROP.setDefaultPropertyInclusion(JsonInclude.Include.NON_NULL);
+    CANONICAL.setConfig(CANONICAL.getSerializationConfig()
+      .with(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+      .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS));
+
+    BINARY_STRICT = configure(new SmileMapper());
+    BINARY_LOOSE = BINARY_STRICT.copy();
+    BINARY_LOOSE_NON_NULL_PROP = BINARY_STRICT.copy();
+    BINARY_STRICT.activateDefaultTyping(BINARY_STRICT.getPolymorphicTypeValidator(), NON_FINAL);
+    BINARY_LOOSE_NON_NULL_PROP.setDefaultPropertyInclusion(JsonInclude.Include.NON_NULL);
+
+    LOOSE_STREAM_WRITER = LOOSE.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    BINARY_LOOSE_STREAM_WRITER = BINARY_LOOSE.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    LOOSE_INDENT_WRITER = LOOSE.writer().with(SerializationFeature.INDENT_OUTPUT);
+    LOOSE_NON_NULL_PROP_INDENT_WRITER = LOOSE_NON_NULL_PROP.writer().with(SerializationFeature.INDENT_OUTPUT);
+  }
+
+  private static ObjectMapper configure(ObjectMapper mapper) {
+    mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+    if (Boolean.getBoolean(BLACKBIRD_PROPERTY)) {
+      mapper.registerModule(new BlackbirdModule());
+    }
+    return mapper;
   }
 
   /**
@@ -58,7 +117,24 @@ public class Jackson {
    */
   @SneakyThrows
   public static String serializeStandardJson(Object object, boolean ignoreNullProperty) {
-    return (ignoreNullProperty ? LOOSE_NON_NULL_PROP : LOOSE).writeValueAsString(object);
+    return writer(object, ignoreNullProperty).writeValueAsString(object);
+  }
+
+  /**
+   * 将 Object 序列化为不带类型的 JSON 并直接写入输出流，不生成中间字符串，也不关闭输出流
+   */
+  @SneakyThrows
+  public static void serializeStandardJson(Object object, OutputStream outputStream) {
+    LOOSE_STREAM_WRITER.writeValue(outputStream, object);
+  }
+
+  /**
+   * 将 Object 序列化为不带类型的 JSON 字符串，属性和 Map 键按字母排序，
+   * 内容相同的对象总是得到相同的字符串，可用于计算摘要
+   */
+  @SneakyThrows
+  public static String serializeCanonicalJson(Object object) {
+    return CANONICAL.writeValueAsString(object);
   }
 
   /**
@@ -75,7 +151,100 @@ public class Jackson {
    */
   @SneakyThrows
   public static <T> T deserializeStandardJson(String untypedJson, Class<T> type) {
-    return LOOSE.reader().readValue(untypedJson, type);
+    return looseReader(type).readValue(untypedJson);
+  }
+
+  /**
+   * 从输入流中读取不带类型的 JSON 并反序列化为对象，不生成中间字符串，也不关闭输入流
+   */
+  @SneakyThrows
+  public static <T> T deserializeStandardJson(InputStream inputStream, Class<T> type) {
+    return looseReader(type).readValue(inputStream);
+  }
+
+  /**
+   * 创建不带类型的 JSON 流式解析器，可以从输入流中逐个读取多个 JSON 值，关闭解析器时不关闭输入流
+   */
+  @SneakyThrows
+  public static JsonParser createStandardJsonParser(InputStream inputStream) {
+    return LOOSE.createParser(inputStream).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+  }
+
+  /**
+   * 从流式解析器的当前位置读取一个不带类型的 JSON 值并反序列化为对象
+   */
+  @SneakyThrows
+  public static <T> T deserializeStandardJson(JsonParser parser, Class<T> type) {
+    return looseReader(type).readValue(parser);
+  }
+
+  /**
+   * 将 Object 序列化为带类型的 Smile 二进制内容，只有 Jackson 自己能反序列化
+   */
+  @SneakyThrows
+  public static byte[] serializeBinary(Object object) {
+    return BINARY_STRICT.writeValueAsBytes(object);
+  }
+
+  /**
+   * 将带类型的 Smile 二进制内容反序列化为对象
+   */
+  @SuppressWarnings("unchecked")
+  @SneakyThrows
+  public static <T> T deserializeBinary(byte[] serialized) {
+    return (T) BINARY_STRICT.readValue(serialized, Object.class);
+  }
+
+  /**
+   * 将 Object 序列化为不带类型的 Smile 二进制内容，包含 null 属性
+   */
+  @SneakyThrows
+  public static byte[] serializeStandardBinary(Object object) {
+    return serializeStandardBinary(object, false);
+  }
+
+  /**
+   * 将 Object 序列化为不带类型的 Smile 二进制内容，用户可以决定是否要忽略 null 属性
+   */
+  @SneakyThrows
+  public static byte[] serializeStandardBinary(Object object, boolean ignoreNullProperty) {
+    return (ignoreNullProperty ? BINARY_LOOSE_NON_NULL_PROP : BINARY_LOOSE).writeValueAsBytes(object);
+  }
+
+  /**
+   * 将 Object 序列化为不带类型的 Smile 二进制内容并直接写入输出流，不关闭输出流
+   */
+  @SneakyThrows
+  public static void serializeStandardBinary(Object object, OutputStream outputStream) {
+    BINARY_LOOSE_STREAM_WRITER.writeValue(outputStream, object);
+  }
+
+  /**
+   * 将不带类型的 Smile 二进制内容反序列化为对象
+   */
+  @SneakyThrows
+  public static <T> T deserializeStandardBinary(byte[] untypedBinary, Class<T> type) {
+    return binaryLooseReader(type).readValue(untypedBinary);
+  }
+
+  /**
+   * 从输入流中读取不带类型的 Smile 二进制内容并反序列化为对象，不关闭输入流
+   */
+  @SneakyThrows
+  public static <T> T deserializeStandardBinary(InputStream inputStream, Class<T> type) {
+    return binaryLooseReader(type).readValue(inputStream);
+  }
+
+  /**
+   * 判断内容是否为 Smile 格式（以 Smile 文件头开始）
+   *
+   * @param header 内容的开头，至少 3 个字节
+   */
+  public static boolean isBinary(byte[] header) {
+    return header.length >= 3
+      && header[0] == SmileConstants.HEADER_BYTE_1
+      && header[1] == SmileConstants.HEADER_BYTE_2
+      && header[2] == SmileConstants.HEADER_BYTE_3;
   }
 
   /**
@@ -96,7 +265,7 @@ public class Jackson {
 
   @SneakyThrows
   public static <T> T deserializeNode(JsonNode node, Class<T> type) {
-    return STRICT.treeToValue(node, type);
+    return STRICT_READERS.computeIfAbsent(type, STRICT::readerFor).readValue(node);
   }
 
   /**
@@ -119,9 +288,23 @@ public class Jackson {
    */
   @SneakyThrows
   public static String toIndentString(Object o, boolean ignoreNullValue) {
-    return (ignoreNullValue ? LOOSE_NON_NULL_PROP : LOOSE)
-      .writer()
-      .with(SerializationFeature.INDENT_OUTPUT)
-      .writeValueAsString(o);
+    return (ignoreNullValue ? LOOSE_NON_NULL_PROP_INDENT_WRITER : LOOSE_INDENT_WRITER).writeValueAsString(o);
+  }
+
+  private static ObjectReader looseReader(Class<?> type) {
+    return LOOSE_READERS.computeIfAbsent(type, t -> LOOSE.readerFor(t).without(JsonParser.Feature.AUTO_CLOSE_SOURCE));
+  }
+
+  private static ObjectReader binaryLooseReader(Class<?> type) {
+    return BINARY_LOOSE_READERS.computeIfAbsent(type, t -> BINARY_LOOSE.readerFor(t).without(JsonParser.Feature.AUTO_CLOSE_SOURCE));
+  }
+
+  private static ObjectWriter writer(Object object, boolean ignoreNullProperty) {
+    var mapper = ignoreNullProperty ? LOOSE_NON_NULL_PROP : LOOSE;
+    if (object == null) {
+      return mapper.writer();
+    }
+    var writers = ignoreNullProperty ? LOOSE_NON_NULL_PROP_WRITERS : LOOSE_WRITERS;
+    return writers.computeIfAbsent(object.getClass(), mapper::writerFor);
   }
 }
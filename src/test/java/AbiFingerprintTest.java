@@ -0,0 +1,69 @@
+import com.hyd.jsp.build.AbiFingerprint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.ToolProvider;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AbiFingerprintTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testFingerprint() throws Exception {
+    var original = fingerprint("v1", "public class A { public int v() { return 1; } private void p() {} }");
+    var bodyChanged = fingerprint("v2", "public class A { public int v() { return 2; } private void p(int i) {} }");
+    var signatureChanged = fingerprint("v3", "public class A { public long v() { return 1; } private void p() {} }");
+    var constantChanged = fingerprint("v4", "public class A { public static final int C = 2; public int v() { return 1; } }");
+    var constantOriginal = fingerprint("v5", "public class A { public static final int C = 1; public int v() { return 1; } }");
+
+    assertEquals(original, bodyChanged);
+    assertNotEquals(original, signatureChanged);
+    assertNotEquals(constantOriginal, constantChanged);
+  }
+
+  @Test
+  public void testAnnotationValues() throws Exception {
+    var tag = " @interface Tag { String[] value(); int[] n() default {}; }";
+    var original = fingerprint("a1", "public class A { @Tag(value = {\"a\"}, n = {1}) public void v() {} }" + tag);
+    var same = fingerprint("a2", "public class A { @Tag(value = {\"a\"}, n = {1}) public void v() { v(); } }" + tag);
+    var valueChanged = fingerprint("a3", "public class A { @Tag(value = {\"b\"}, n = {1}) public void v() {} }" + tag);
+    var arrayChanged = fingerprint("a4", "public class A { @Tag(value = {\"a\"}, n = {2}) public void v() {} }" + tag);
+    var defaultChanged = fingerprint("a5", "public class A { @Tag(value = {\"a\"}, n = {1}) public void v() {} }"
+      + " @interface Tag { String[] value(); int[] n() default {0}; }");
+
+    assertEquals(original, same);
+    assertNotEquals(original, valueChanged);
+    assertNotEquals(original, arrayChanged);
+    assertNotEquals(original, defaultChanged);
+  }
+
+  @Test
+  public void testUnsupportedClassVersion() throws Exception {
+    fingerprint("u1", "public class A {}");
+    // 将 class 文件的主版本号改为 ASM 不支持的 200
+    var classFile = tempDir.resolve("u1").resolve("classes").resolve("A.class");
+    var bytes = Files.readAllBytes(classFile);
+    bytes[6] = 0;
+    bytes[7] = (byte) 200;
+    Files.write(classFile, bytes);
+
+    var first = AbiFingerprint.compute(classFile.getParent());
+    assertTrue(first.startsWith("unknown-"));
+    assertNotEquals(first, AbiFingerprint.compute(classFile.getParent()));
+  }
+
+  private String fingerprint(String name, String source) throws Exception {
+    var sourceFile = tempDir.resolve(name).resolve("A.java");
+    var classesDir = tempDir.resolve(name).resolve("classes");
+    Files.createDirectories(classesDir);
+    Files.writeString(sourceFile, source);
+    var result = ToolProvider.getSystemJavaCompiler().run(null, null, null, "-d", classesDir.toString(), sourceFile.toString());
+    assertEquals(0, result);
+    return AbiFingerprint.compute(classesDir);
+  }
+}
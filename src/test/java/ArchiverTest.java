@@ -0,0 +1,60 @@
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.archive.Archiver;
+import com.hyd.jsp.model.ArchiveFormat;
+import com.hyd.jsp.model.ArchiveParams;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArchiverTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testZipInKeyOrder() throws Exception {
+    var config = new JavaServicePackagerConfig();
+    config.setArchiveThreads(4);
+    var archiver = new Archiver();
+    ReflectionTestUtils.setField(archiver, "config", config);
+    ReflectionTestUtils.invokeMethod(archiver, "init");
+
+    var entries = new TreeMap<String, Path>();
+    for (var i = 0; i < 200; i++) {
+      var file = tempDir.resolve("file-" + i + (i % 10 == 0 ? ".jar" : ".txt"));
+      Files.writeString(file, ("content " + i + "\n").repeat((i * 7919) % 3000 + 1));
+      entries.put("app/" + file.getFileName(), file);
+    }
+    var params = new ArchiveParams();
+    params.setFormat(ArchiveFormat.ZIP);
+
+    var first = tempDir.resolve("first.zip");
+    var second = tempDir.resolve("second.zip");
+    archiver.archive(entries, first, params);
+    archiver.archive(entries, second, params);
+
+    // 条目按名称顺序写入，同样的输入得到同样的压缩包
+    var names = new ArrayList<String>();
+    try (var zipFile = new ZipFile(first.toFile())) {
+      var zipEntries = zipFile.getEntriesInPhysicalOrder();
+      while (zipEntries.hasMoreElements()) {
+        var zipEntry = zipEntries.nextElement();
+        names.add(zipEntry.getName());
+        assertArrayEquals(Files.readAllBytes(entries.get(zipEntry.getName())), zipFile.getInputStream(zipEntry).readAllBytes());
+      }
+    }
+    assertEquals(new ArrayList<>(entries.keySet()), names);
+    assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+    try (var files = Files.list(tempDir)) {
+      assertEquals(202, files.count());
+    }
+  }
+}
@@ -0,0 +1,70 @@
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.cache.BuildCache;
+import com.hyd.jsp.cache.FileHashCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BuildCacheTest {
+
+  @TempDir
+  Path tempDir;
+
+  private BuildCache buildCache;
+
+  @BeforeEach
+  public void setUp() {
+    var config = new JavaServicePackagerConfig();
+    config.setWorkDir(tempDir.resolve("work").toString());
+    var fileHashCache = new FileHashCache();
+    ReflectionTestUtils.setField(fileHashCache, "config", config);
+    ReflectionTestUtils.invokeMethod(fileHashCache, "init");
+    buildCache = new BuildCache();
+    ReflectionTestUtils.setField(buildCache, "config", config);
+    ReflectionTestUtils.setField(buildCache, "fileHashCache", fileHashCache);
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed() throws Exception {
+    store("old", "shared", 100);
+    store("middle", "middle", 100);
+    store("new", "shared", 100);
+    setLastUsed("old", 1000);
+    setLastUsed("middle", 2000);
+    setLastUsed("new", 3000);
+
+    // 使用缓存后成为最近使用的
+    assertNotNull(buildCache.restore("old", tempDir.resolve("restored")));
+
+    int evicted = ReflectionTestUtils.invokeMethod(buildCache, "evict", 150L);
+    assertEquals(1, evicted);
+    assertNotNull(buildCache.restore("old", tempDir.resolve("restored-old")));
+    assertNotNull(buildCache.restore("new", tempDir.resolve("restored-new")));
+    assertNull(buildCache.restore("middle", tempDir.resolve("restored-middle")));
+
+    // 只被删除的清单引用的文件也被删除
+    try (var objects = Files.walk(tempDir.resolve("work/cache/objects"))) {
+      assertEquals(3, objects.filter(Files::isRegularFile).count());
+    }
+  }
+
+  private void store(String key, String content, int size) throws Exception {
+    var artifactDir = tempDir.resolve("artifacts-" + key);
+    Files.createDirectories(artifactDir);
+    Files.writeString(artifactDir.resolve("app.zip"), content.repeat(size / content.length() + 1).substring(0, size));
+    Files.writeString(artifactDir.resolve("app.txt"), key);
+    buildCache.store(key, artifactDir, List.of("app.zip", "app.txt"));
+  }
+
+  private void setLastUsed(String key, long millis) throws Exception {
+    Files.setLastModifiedTime(tempDir.resolve("work/cache/index/" + key + ".json"), FileTime.fromMillis(millis));
+  }
+}
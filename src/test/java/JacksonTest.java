@@ -0,0 +1,57 @@
+import com.hyd.jsp.model.PackagingParams;
+import com.hyd.jsp.model.ProjectSettings;
+import com.hyd.jsp.model.Settings;
+import com.hyd.jsp.utils.Jackson;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JacksonTest {
+
+  @Test
+  public void testStandardJsonStream() throws Exception {
+    var settings = createSettings();
+
+    var out = new ByteArrayOutputStream();
+    Jackson.serializeStandardJson(settings, out);
+    assertEquals(Jackson.serializeStandardJson(settings), out.toString(StandardCharsets.UTF_8));
+
+    var in = new ByteArrayInputStream(out.toByteArray());
+    assertEquals(settings, Jackson.deserializeStandardJson(in, Settings.class));
+  }
+
+  @Test
+  public void testStandardBinary() throws Exception {
+    var settings = createSettings();
+
+    var binary = Jackson.serializeStandardBinary(settings);
+    assertTrue(Jackson.isBinary(binary));
+    assertFalse(Jackson.isBinary(Jackson.serializeStandardJson(settings).getBytes(StandardCharsets.UTF_8)));
+    assertTrue(binary.length < Jackson.serializeStandardJson(settings).length());
+
+    assertEquals(settings, Jackson.deserializeStandardBinary(binary, Settings.class));
+    assertEquals(settings, Jackson.deserializeStandardBinary(new ByteArrayInputStream(binary), Settings.class));
+  }
+
+  @Test
+  public void testCanonicalJson() throws Exception {
+    var a = Jackson.serializeCanonicalJson(Map.of("b", 1, "a", 2, "c", 3));
+    var b = Jackson.serializeCanonicalJson(Map.of("c", 3, "b", 1, "a", 2));
+    assertEquals("{\"a\":2,\"b\":1,\"c\":3}", a);
+    assertEquals(a, b);
+  }
+
+  private Settings createSettings() {
+    var projectSettings = new ProjectSettings();
+    projectSettings.setProject("demo-project");
+    projectSettings.setPackagingParams(new PackagingParams());
+    projectSettings.getPackagingParams().getSourceParams().setRepository("file:///tmp/demo-project.git");
+    return new Settings(List.of(projectSettings));
+  }
+}
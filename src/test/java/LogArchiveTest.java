@@ -0,0 +1,101 @@
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.log.LogArchive;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogArchiveTest {
+
+  @TempDir
+  Path tempDir;
+
+  private LogArchive archive;
+
+  @BeforeEach
+  public void setUp() {
+    var config = new JavaServicePackagerConfig();
+    config.setWorkDir(tempDir.toString());
+    archive = new LogArchive();
+    ReflectionTestUtils.setField(archive, "config", config);
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    append("app", "20261001120000-000001", "[INFO] Building app\n[ERROR] Compilation failure\n[INFO] BUILD FAILURE\n");
+    append("web", "20261002120000-000002", "[ERROR] compilation FAILURE in web\n");
+
+    var result = archive.search("compilation failure", null, 10);
+    assertEquals(2, result.getMatches().size());
+    var match = result.getMatches().get(0);
+    assertEquals("app", match.getProject());
+    assertEquals("20261001120000-000001", match.getJobId());
+    assertEquals(2, match.getLine());
+    assertEquals("[ERROR] Compilation failure", match.getText());
+
+    // 只搜索指定项目，词需要完整匹配
+    assertEquals(1, archive.search("compilation failure", "web", 10).getMatches().size());
+    assertEquals(0, archive.search("compil", null, 10).getMatches().size());
+  }
+
+  @Test
+  public void testBloomSkip() throws Exception {
+    append("app", "20261001120000-000001", "[INFO] nothing to see here\n");
+    append("app", "20261001120000-000002", "[INFO] found the needle\n");
+
+    var result = archive.search("needle", null, 10);
+    assertEquals(1, result.getMatches().size());
+    assertEquals("20261001120000-000002", result.getMatches().get(0).getJobId());
+    assertEquals(1, result.getSearchedBlocks());
+    assertEquals(1, result.getSkippedBlocks());
+  }
+
+  @Test
+  public void testMultipleBlocks() throws Exception {
+    var text = new StringBuilder();
+    for (var i = 1; i <= 10000; i++) {
+      text.append("[INFO] line ").append(i).append(" marker_").append(i).append('\n');
+    }
+    append("app", "20261001120000-000001", text.toString());
+
+    // 行号跨块连续
+    for (var i : new int[]{1, 2500, 7777, 10000}) {
+      var result = archive.search("marker_" + i, null, 10);
+      assertEquals(1, result.getMatches().size());
+      assertEquals(i, result.getMatches().get(0).getLine());
+      assertEquals("[INFO] line " + i + " marker_" + i, result.getMatches().get(0).getText());
+    }
+
+    var result = archive.search("info", null, 20000);
+    assertEquals(10000, result.getMatches().size());
+    assertTrue(result.getSearchedBlocks() > 1);
+  }
+
+  @Test
+  public void testIncompleteIndexRecord() throws Exception {
+    append("app", "20261001120000-000001", "[INFO] first job\n");
+
+    // 写入中断留下的不完整记录
+    var indexFile = tempDir.resolve("log-archive").resolve("202610.index");
+    Files.write(indexFile, new byte[]{0, 0, 1, 0, 42, 42, 42}, StandardOpenOption.APPEND);
+    assertEquals(1, archive.search("job", null, 10).getMatches().size());
+
+    append("app", "20261001120000-000002", "[INFO] second job\n");
+    var result = archive.search("job", null, 10);
+    assertEquals(2, result.getMatches().size());
+    assertEquals("20261001120000-000002", result.getMatches().get(1).getJobId());
+  }
+
+  private void append(String project, String jobId, String text) throws Exception {
+    var logFile = tempDir.resolve(jobId + ".log");
+    Files.writeString(logFile, text);
+    archive.append(project, jobId, logFile);
+  }
+}
@@ -0,0 +1,57 @@
+import com.hyd.jsp.log.LogRingBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LogRingBufferTest {
+
+  @Test
+  public void testRead() {
+    var buffer = new LogRingBuffer(16, false);
+    write(buffer, "line1\nline2\n");
+    assertEquals("line1\nline2\n", read(buffer, 0));
+    assertEquals("line2\n", read(buffer, 6));
+    assertEquals("", read(buffer, 12));
+  }
+
+  @Test
+  public void testOverwrite() {
+    var buffer = new LogRingBuffer(16, true);
+    write(buffer, "0123456789");
+    write(buffer, "abcdefghij");
+    assertEquals(20, buffer.getPosition());
+    assertEquals(4, buffer.getStartPosition());
+
+    // 位置 0 的内容已被覆盖，从最旧的内容开始读取
+    var target = ByteBuffer.allocate(64);
+    assertEquals(4, buffer.read(0, target));
+    target.flip();
+    assertEquals("456789abcdefghij", StandardCharsets.UTF_8.decode(target).toString());
+
+    assertEquals("ghij", read(buffer, 16));
+  }
+
+  @Test
+  public void testWriteLargerThanCapacity() {
+    var buffer = new LogRingBuffer(8, false);
+    write(buffer, "abc");
+    write(buffer, "0123456789");
+    assertEquals(13, buffer.getPosition());
+    assertEquals("23456789", read(buffer, 0));
+  }
+
+  private static void write(LogRingBuffer buffer, String text) {
+    var bytes = text.getBytes(StandardCharsets.UTF_8);
+    buffer.write(bytes, 0, bytes.length);
+  }
+
+  private static String read(LogRingBuffer buffer, long from) {
+    var target = ByteBuffer.allocate(64);
+    buffer.read(from, target);
+    target.flip();
+    return StandardCharsets.UTF_8.decode(target).toString();
+  }
+}
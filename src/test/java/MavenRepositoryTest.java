@@ -0,0 +1,59 @@
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.build.MavenRepository;
+import com.hyd.jsp.build.MavenVersion;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MavenRepositoryTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testSharedRepositoryTail() throws Exception {
+    var mavenRepository = mavenRepository("3.9.11");
+    var mvn = tempDir.resolve("mvn").toString();
+    var defaultRepository = Path.of(System.getProperty("user.home"), ".m2", "repository");
+
+    var command = mavenRepository.toBuildCommand("demo", List.of(mvn, "package"), tempDir);
+    assertTrue(command.contains("-Dmaven.repo.local.tail=" + defaultRepository));
+
+    // 命令中指定的本地仓库作为后备仓库
+    command = mavenRepository.toBuildCommand("demo", List.of(mvn, "-Dmaven.repo.local=/opt/m2", "package"), tempDir);
+    assertTrue(command.contains("-Dmaven.repo.local.tail=/opt/m2"));
+    assertFalse(command.contains("-Dmaven.repo.local=/opt/m2"));
+    assertEquals(1, command.stream().filter(arg -> arg.startsWith("-Dmaven.repo.local=")).count());
+  }
+
+  @Test
+  public void testJobRepositoryTail() throws Exception {
+    var mavenRepository = mavenRepository("3.8.8");
+    var mvn = tempDir.resolve("mvn").toString();
+    var projectRepository = tempDir.resolve("work/m2/projects/demo").toAbsolutePath();
+
+    var command = mavenRepository.toBuildCommand("demo", List.of(mvn, "-Dmaven.repo.local=/opt/m2", "install"), tempDir);
+    command = mavenRepository.withJobRepository(command, "20261001120000-000001");
+    assertTrue(command.contains("-Dmaven.repo.local.tail=" + projectRepository + ",/opt/m2"));
+    assertEquals(1, command.stream().filter(arg -> arg.startsWith("-Dmaven.repo.local.tail=")).count());
+  }
+
+  private MavenRepository mavenRepository(String mavenVersion) throws Exception {
+    var config = new JavaServicePackagerConfig();
+    config.setWorkDir(tempDir.resolve("work").toString());
+    var mvn = tempDir.resolve("mvn");
+    Files.writeString(mvn, "#!/bin/sh\necho 'Apache Maven " + mavenVersion + "'\n");
+    assertTrue(mvn.toFile().setExecutable(true));
+
+    var mavenRepository = new MavenRepository();
+    ReflectionTestUtils.setField(mavenRepository, "config", config);
+    ReflectionTestUtils.setField(mavenRepository, "mavenVersion", new MavenVersion());
+    return mavenRepository;
+  }
+}
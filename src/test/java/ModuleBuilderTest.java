@@ -0,0 +1,109 @@
+import com.hyd.jsp.JavaServicePackagerConfig;
+import com.hyd.jsp.build.MavenRepository;
+import com.hyd.jsp.build.ModuleBuilder;
+import com.hyd.jsp.build.ModuleGraph;
+import com.hyd.jsp.cache.BuildCache;
+import com.hyd.jsp.cache.FileHashCache;
+import com.hyd.jsp.metrics.PackagerMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.tools.ToolProvider;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ModuleBuilderTest {
+
+  @TempDir
+  Path tempDir;
+
+  private ModuleBuilder moduleBuilder;
+
+  private Path sourceDir;
+
+  private Path mvn;
+
+  private Path compileLog;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    var config = new JavaServicePackagerConfig();
+    config.setWorkDir(tempDir.resolve("work").toString());
+    var fileHashCache = new FileHashCache();
+    ReflectionTestUtils.setField(fileHashCache, "config", config);
+    ReflectionTestUtils.invokeMethod(fileHashCache, "init");
+    var buildCache = new BuildCache();
+    ReflectionTestUtils.setField(buildCache, "config", config);
+    ReflectionTestUtils.setField(buildCache, "fileHashCache", fileHashCache);
+    var mavenRepository = new MavenRepository();
+    ReflectionTestUtils.setField(mavenRepository, "config", config);
+    var metrics = new PackagerMetrics();
+    ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(metrics, "config", config);
+
+    moduleBuilder = new ModuleBuilder();
+    ReflectionTestUtils.setField(moduleBuilder, "buildCache", buildCache);
+    ReflectionTestUtils.setField(moduleBuilder, "mavenRepository", mavenRepository);
+    ReflectionTestUtils.setField(moduleBuilder, "fileHashCache", fileHashCache);
+    ReflectionTestUtils.setField(moduleBuilder, "metrics", metrics);
+
+    sourceDir = tempDir.resolve("source");
+    Files.createDirectories(sourceDir.resolve("a/prebuilt"));
+    Files.writeString(sourceDir.resolve("pom.xml"), "<project><groupId>demo</groupId><artifactId>parent</artifactId>"
+      + "<modules><module>a</module></modules></project>");
+    Files.writeString(sourceDir.resolve("a/pom.xml"), "<project><parent><groupId>demo</groupId>"
+      + "<artifactId>parent</artifactId></parent><artifactId>a</artifactId></project>");
+    var javaFile = tempDir.resolve("A.java");
+    Files.writeString(javaFile, "public class A { public int value() { return 1; } }");
+    assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null,
+      "-d", sourceDir.resolve("a/prebuilt").toString(), javaFile.toString()));
+
+    // 模拟 Maven：clean 删除 target，编译时复制 prebuilt 中的类，install 时记录 target/classes 中的文件
+    compileLog = tempDir.resolve("compile.log");
+    mvn = tempDir.resolve("mvn");
+    Files.writeString(mvn, "#!/bin/sh\n"
+      + "clean=false; skip=false; module=; next=\n"
+      + "for arg in \"$@\"; do\n"
+      + "  if [ \"$next\" = pl ]; then module=$arg; next=; continue; fi\n"
+      + "  case \"$arg\" in\n"
+      + "    clean) clean=true ;;\n"
+      + "    -pl) next=pl ;;\n"
+      + "    -Dmaven.main.skip=true) skip=true ;;\n"
+      + "    -Dmdep.outputFile=*) : > \"${arg#-Dmdep.outputFile=}\" ;;\n"
+      + "  esac\n"
+      + "done\n"
+      + "dir=${module#*:}; [ \"$dir\" = parent ] && dir=.\n"
+      + "$clean && rm -rf \"$dir/target\"\n"
+      + "if ! $skip && [ -d \"$dir/prebuilt\" ]; then\n"
+      + "  mkdir -p \"$dir/target/classes\" && cp -R \"$dir/prebuilt/.\" \"$dir/target/classes/\"\n"
+      + "  echo \"$module\" >> '" + compileLog + "'\n"
+      + "fi\n"
+      + "mkdir -p \"$dir/target\" && ls \"$dir/target/classes\" > \"$dir/target/installed.txt\" 2>/dev/null\n"
+      + "exit 0\n");
+    assertTrue(mvn.toFile().setExecutable(true));
+  }
+
+  @Test
+  public void testCleanPackageWithoutCompilation() throws Exception {
+    var command = List.of(mvn.toString(), "-B", "clean", "package");
+    build(command, "20261001120000-000001");
+    build(command, "20261001120000-000002");
+
+    // 第二次构建恢复了编译结果，没有被 clean 删除
+    assertEquals(List.of("demo:a"), Files.readAllLines(compileLog));
+    assertEquals(List.of("A.class"), Files.readAllLines(sourceDir.resolve("a/target/installed.txt")));
+  }
+
+  private void build(List<String> command, String jobId) throws Exception {
+    var logFile = tempDir.resolve("work/logs/" + jobId + ".log");
+    Files.createDirectories(logFile.getParent());
+    moduleBuilder.build(jobId, ModuleGraph.parse(sourceDir), command, sourceDir, 2, logFile);
+  }
+}
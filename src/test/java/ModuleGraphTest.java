@@ -0,0 +1,95 @@
+import com.hyd.jsp.build.ModuleGraph;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModuleGraphTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testParse() throws Exception {
+    writePom(tempDir, "parent", null, "<modules><module>a</module><module>b</module><module>c</module></modules>");
+    writePom(tempDir.resolve("c"), "c", "parent", dependencies("b", "commons-lang3"));
+    writePom(tempDir.resolve("b"), "b", "parent", dependencies("a"));
+    writePom(tempDir.resolve("a"), "a", "parent", "");
+
+    var graph = ModuleGraph.parse(tempDir);
+    assertTrue(graph.isMultiModule());
+    assertEquals(4, graph.size());
+    assertEquals(Set.of("demo:parent", "demo:b"), graph.getModule("demo:c").getUpstream());
+
+    var sorted = graph.sortedModules().toString();
+    assertEquals("[parent, a, b, c]", sorted);
+
+    var c = graph.getModule("demo:c");
+    assertEquals(Set.of("demo:parent", "demo:a", "demo:b"), graph.upstreamClosure(c));
+    assertEquals("[parent]", graph.ancestors(c).toString());
+    assertEquals(3, graph.nestedModuleDirectories(graph.getModule("demo:parent")).size());
+    assertTrue(graph.nestedModuleDirectories(c).isEmpty());
+  }
+
+  @Test
+  public void testMatchByGroupId() throws Exception {
+    writePom(tempDir, "parent", null, "<modules><module>a</module><module>b</module></modules>");
+    writePom(tempDir.resolve("a"), "a", "parent", "");
+    // 依赖其他 groupId 中同名的 a 不是本项目的模块
+    writePom(tempDir.resolve("b"), "b", "parent", "<dependencies>"
+      + "<dependency><groupId>other</groupId><artifactId>a</artifactId></dependency>"
+      + "<dependency><groupId>${project.groupId}</groupId><artifactId>parent</artifactId></dependency>"
+      + "</dependencies>");
+
+    var graph = ModuleGraph.parse(tempDir);
+    assertEquals(Set.of("demo:parent"), graph.getModule("demo:b").getUpstream());
+    assertNull(graph.getModule("a"));
+  }
+
+  @Test
+  public void testCycle() throws Exception {
+    writePom(tempDir, "parent", null, "<modules><module>a</module><module>b</module></modules>");
+    writePom(tempDir.resolve("a"), "a", null, dependencies("b"));
+    writePom(tempDir.resolve("b"), "b", null, dependencies("a"));
+
+    var graph = ModuleGraph.parse(tempDir);
+    assertThrows(IllegalStateException.class, graph::sortedModules);
+  }
+
+  @Test
+  public void testExternalSnapshots() throws Exception {
+    writePom(tempDir, "parent", null, "<version>1.0-SNAPSHOT</version>"
+      + "<properties><lib.version>2.0-SNAPSHOT</lib.version></properties>"
+      + "<modules><module>a</module><module>b</module></modules>");
+    writePom(tempDir.resolve("a"), "a", "parent", "");
+    // 本项目模块的 SNAPSHOT 不算外部依赖，父 pom 中定义的版本属性也能解析
+    writePom(tempDir.resolve("b"), "b", "parent", "<dependencies>"
+      + "<dependency><groupId>demo</groupId><artifactId>a</artifactId><version>${project.version}</version></dependency>"
+      + "<dependency><groupId>other</groupId><artifactId>lib</artifactId><version>${lib.version}</version></dependency>"
+      + "<dependency><groupId>other</groupId><artifactId>release</artifactId><version>1.0</version></dependency>"
+      + "</dependencies>");
+
+    var graph = ModuleGraph.parse(tempDir);
+    assertEquals("[other:lib:2.0-SNAPSHOT]", graph.getExternalSnapshots().toString());
+  }
+
+  private static String dependencies(String... artifactIds) {
+    var builder = new StringBuilder("<dependencies>");
+    for (var artifactId : artifactIds) {
+      builder.append("<dependency><groupId>demo</groupId><artifactId>").append(artifactId)
+        .append("</artifactId></dependency>");
+    }
+    return builder.append("</dependencies>").toString();
+  }
+
+  private static void writePom(Path dir, String artifactId, String parent, String content) throws Exception {
+    Files.createDirectories(dir);
+    var parentElement = parent == null ? "" : "<parent><groupId>demo</groupId><artifactId>" + parent + "</artifactId></parent>";
+    Files.writeString(dir.resolve("pom.xml"), "<project>" + parentElement
+      + "<groupId>demo</groupId><artifactId>" + artifactId + "</artifactId>" + content + "</project>");
+  }
+}
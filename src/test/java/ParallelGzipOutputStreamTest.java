@@ -0,0 +1,45 @@
+import com.hyd.jsp.archive.ParallelGzipOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelGzipOutputStreamTest {
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    var random = new Random(1);
+    var content = new byte[1024 * 1024 + 12345];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) (random.nextInt(16) + 'a');
+    }
+
+    var executor = Executors.newFixedThreadPool(4);
+    try {
+      for (var length : new int[]{0, 100, 128 * 1024, content.length}) {
+        var compressed = new ByteArrayOutputStream();
+        try (var out = new ParallelGzipOutputStream(compressed, executor, 6, 4)) {
+          out.write(content, 0, length / 2);
+          for (int i = length / 2; i < length; i++) {
+            out.write(content[i]);
+          }
+        }
+
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+          var expected = new byte[length];
+          System.arraycopy(content, 0, expected, 0, length);
+          assertArrayEquals(expected, in.readAllBytes());
+        }
+        assertTrue(length < 1000 || compressed.size() < length * 0.7);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
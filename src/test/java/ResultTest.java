@@ -0,0 +1,72 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.hyd.jsp.springmvc.Result;
+import com.hyd.jsp.springmvc.ResultSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultTest {
+
+  @Test
+  public void testGetObject() throws Exception {
+    var result = new Result()
+      .set("int", "12.5")
+      .set("long", 12.5)
+      .set("double", "3.25")
+      .set("decimal", 7)
+      .set("timestamp", 1000L)
+      .set("timestampString", "2000")
+      .set("date", "2020-01-02 03:04:05")
+      .set("map", Map.of("resultCode", 5, "message", "hello"));
+
+    assertEquals(12, result.getInteger("int"));
+    assertEquals(12L, result.getLong("long"));
+    assertEquals(3.25, result.getDouble("double"));
+    assertEquals(new BigDecimal("7"), result.getObject("decimal", BigDecimal.class));
+    assertEquals(new Date(1000), result.getDate("timestamp"));
+    assertEquals(new Date(2000), result.getDate("timestampString"));
+
+    var expected = Date.from(LocalDateTime.of(2020, 1, 2, 3, 4, 5).atZone(ZoneId.systemDefault()).toInstant());
+    assertEquals(expected, result.getDate("date"));
+
+    var nested = result.getObject("map", Result.class);
+    assertEquals(5, nested.getResultCode());
+    assertEquals("hello", nested.getMessage());
+
+    assertNull(result.getInteger("missing"));
+    assertEquals(-1, result.getInteger("date", -1));
+    assertThrows(RuntimeException.class, () -> result.getObject("date", StringBuilder.class));
+
+    result.set("big", 3_000_000_000L).set("huge", 1e20);
+    assertEquals(3_000_000_000L, result.getLong("big"));
+    assertThrows(RuntimeException.class, () -> result.getInteger("big"));
+    assertThrows(RuntimeException.class, () -> result.getLong("huge"));
+  }
+
+  @Test
+  public void testSuccess() throws Exception {
+    var result = Result.success();
+    assertNotSame(result, Result.success());
+    assertTrue(result.isSuccess());
+
+    result.set("jobId", "1");
+    assertEquals("1", result.get("jobId"));
+
+    var copy = new Result(Result.success());
+    copy.set("jobId", "2");
+    assertEquals("2", copy.get("jobId"));
+
+    var mapper = new ObjectMapper().registerModule(new SimpleModule().addSerializer(new ResultSerializer()));
+    assertEquals("{\"resultCode\":0,\"message\":null,\"data\":{},\"errorStackTrace\":null,\"success\":true}",
+      mapper.writeValueAsString(Result.success()));
+    assertEquals("{\"resultCode\":0,\"message\":null,\"data\":{\"jobId\":\"1\"},\"errorStackTrace\":null,\"success\":true}",
+      mapper.writeValueAsString(result));
+  }
+}
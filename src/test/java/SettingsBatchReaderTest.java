@@ -0,0 +1,49 @@
+import com.hyd.jsp.settings.SettingsBatchReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SettingsBatchReaderTest {
+
+  @Test
+  public void testRead() throws Exception {
+    var records = SettingsBatchReader.read(input(
+      "{\"project\":\"a\",\"packagingParams\":{\"sourceParams\":{\"directory\":\"/src/a\"}}}\n" +
+      "\n" +
+      "{\"packagingParams\":{\"sourceParams\":{\"directory\":\"/src/b\"}},\"other\":[1,{}],\"project\":\"b\"}\n" +
+      "{\"project\":\"a\",\"packagingParams\":{\"sourceParams\":{\"directory\":\"/src/a2\"}}}"
+    ));
+
+    assertEquals(List.of("a", "b"), List.copyOf(records.keySet()));
+    assertEquals("/src/a2", records.get("a").getSourceParams().getDirectory());
+    assertEquals("/src/b", records.get("b").getSourceParams().getDirectory());
+  }
+
+  @Test
+  public void testInvalidRecord() {
+    var e = assertThrows(IllegalArgumentException.class, () -> SettingsBatchReader.read(input(
+      "{\"project\":\"a\",\"packagingParams\":{}}\n{\"packagingParams\":{}}\n")));
+    assertTrue(e.getMessage().startsWith("第 2 条记录缺少 project"));
+
+    e = assertThrows(IllegalArgumentException.class, () -> SettingsBatchReader.read(input(
+      "{\"project\":\"a\",\"packagingParams\":{}}\n{\"project\":\"b\",\"packagingParams\":{\n")));
+    assertTrue(e.getMessage().startsWith("第 2 条记录格式错误"));
+
+    e = assertThrows(IllegalArgumentException.class, () -> SettingsBatchReader.read(input("[]")));
+    assertTrue(e.getMessage().startsWith("第 1 条记录不是 JSON 对象"));
+
+    for (var project : new String[]{"../a", "..", "a/b", ".hidden", "中文"}) {
+      e = assertThrows(IllegalArgumentException.class, () -> SettingsBatchReader.read(input(
+        "{\"project\":\"" + project + "\",\"packagingParams\":{}}\n")));
+      assertTrue(e.getMessage().startsWith("第 1 条记录项目名称"), e.getMessage());
+    }
+  }
+
+  private static ByteArrayInputStream input(String text) {
+    return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+  }
+}
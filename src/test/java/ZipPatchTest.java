@@ -0,0 +1,57 @@
+import com.hyd.jsp.archive.ZipPatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ZipPatchTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testPatch() throws Exception {
+    var random = new Random(1);
+    var library = new byte[512 * 1024];
+    random.nextBytes(library);
+
+    var oldFile = tempDir.resolve("old.jar");
+    var newFile = tempDir.resolve("new.jar");
+    writeJar(oldFile, library, "class A { int version = 1; }", 1000L);
+    writeJar(newFile, library, "class A { int version = 2; }", 2000L);
+
+    var patch = new ByteArrayOutputStream();
+    var literalBytes = ZipPatch.create(oldFile, newFile, patch);
+    assertTrue(literalBytes < 1024);
+    assertTrue(patch.size() < 1024);
+
+    var patched = new ByteArrayOutputStream();
+    ZipPatch.apply(oldFile, new ByteArrayInputStream(patch.toByteArray()), patched);
+    assertArrayEquals(Files.readAllBytes(newFile), patched.toByteArray());
+  }
+
+  private static void writeJar(Path file, byte[] library, String classContent, long time) throws Exception {
+    try (var out = new ZipOutputStream(Files.newOutputStream(file))) {
+      var libraryEntry = new ZipEntry("lib/library.jar");
+      libraryEntry.setTime(time);
+      out.putNextEntry(libraryEntry);
+      out.write(library);
+      out.closeEntry();
+
+      var classEntry = new ZipEntry("A.class");
+      classEntry.setTime(time);
+      out.putNextEntry(classEntry);
+      out.write(classContent.getBytes());
+      out.closeEntry();
+    }
+  }
+}